@@ -0,0 +1,196 @@
+package src.Client;
+
+import src.Common.CreateRequest;
+import src.Common.DeleteRequest;
+import src.Common.ErrorType;
+import src.Common.PageResponse;
+import src.Common.ReadConsistency;
+import src.Common.ServerResponse;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking front end to IdServiceClient: every operation returns at once with a
+ * CompletableFuture, so one thread can keep thousands of requests outstanding. RMI calls
+ * themselves block, so they run on a pool holding maxCallsPerServer threads per server,
+ * which also bounds how many calls each server sees at once; the rest wait in the pool's
+ * queue. Each future fails with a TimeoutException if its call has not finished within
+ * the timeout of being submitted, and with a CompletionException wrapping the
+ * RemoteException if the call itself fails.
+ */
+public class AsyncIdServiceClient implements AutoCloseable {
+    private static final AtomicInteger poolNumber = new AtomicInteger();
+
+    private final IdServiceClient client;
+    private final ExecutorService callers;
+    private final long timeoutMillis;
+
+    /**
+     * Creates a client for a group of servers.
+     *
+     * @param hostnames         every server in the group
+     * @param port              port the servers' registries listen on
+     * @param maxCallsPerServer most calls in flight to any one server at once
+     * @param timeoutMillis     how long each call may take before its future fails
+     */
+    public AsyncIdServiceClient(List<String> hostnames, int port, int maxCallsPerServer, long timeoutMillis) {
+        this(new IdServiceClient(hostnames, port), hostnames.size(), maxCallsPerServer, timeoutMillis);
+    }
+
+    /**
+     * Creates an asynchronous client on top of an existing one, sharing its cached stubs and coordinator.
+     *
+     * @param client            client to make calls with
+     * @param serverCount       number of servers client talks to
+     * @param maxCallsPerServer most calls in flight to any one server at once
+     * @param timeoutMillis     how long each call may take before its future fails
+     */
+    public AsyncIdServiceClient(IdServiceClient client, int serverCount, int maxCallsPerServer, long timeoutMillis) {
+        if (maxCallsPerServer <= 0 || timeoutMillis <= 0) {
+            throw new IllegalArgumentException("maxCallsPerServer and timeoutMillis must be positive");
+        }
+        this.client = client;
+        this.timeoutMillis = timeoutMillis;
+        client.setMaxCallsPerServer(maxCallsPerServer);
+
+        int threads = maxCallsPerServer * Math.max(1, serverCount);
+        String namePrefix = "id-client-" + poolNumber.incrementAndGet() + "-";
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.callers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the blocking client calls are made with, for its settings and session timestamp
+     */
+    public IdServiceClient blocking() {
+        return client;
+    }
+
+    public void setReadConsistency(ReadConsistency consistency) {
+        client.setReadConsistency(consistency);
+    }
+
+    public CompletableFuture<ServerResponse> create(String loginName, String realName, String password) {
+        return submit(() -> client.create(loginName, realName, password));
+    }
+
+    public CompletableFuture<ServerResponse> lookup(String loginName) {
+        return submit(() -> client.lookup(loginName));
+    }
+
+    public CompletableFuture<ServerResponse> reverseLookup(String uuidString) {
+        return submit(() -> client.reverseLookup(uuidString));
+    }
+
+    public CompletableFuture<ServerResponse> modify(String oldLoginName, String newLoginName, String password) {
+        return submit(() -> client.modify(oldLoginName, newLoginName, password));
+    }
+
+    public CompletableFuture<ServerResponse> delete(String loginName, String password) {
+        return submit(() -> client.delete(loginName, password));
+    }
+
+    public CompletableFuture<ServerResponse> get(String whatToGet) {
+        return submit(() -> client.get(whatToGet));
+    }
+
+    public CompletableFuture<PageResponse> getPage(String whatToGet, String cursor, int pageSize) {
+        return submit(() -> client.getPage(whatToGet, cursor, pageSize));
+    }
+
+    public CompletableFuture<PageResponse> search(String searchType, String pattern, String cursor, int limit) {
+        return submit(() -> client.search(searchType, pattern, cursor, limit));
+    }
+
+    public CompletableFuture<List<ServerResponse>> createMany(List<CreateRequest> requests) {
+        return submit(() -> client.createMany(requests));
+    }
+
+    public CompletableFuture<List<ServerResponse>> lookupMany(List<String> loginNames) {
+        return submit(() -> client.lookupMany(loginNames));
+    }
+
+    public CompletableFuture<List<ServerResponse>> reverseLookupMany(List<String> uuidStrings) {
+        return submit(() -> client.reverseLookupMany(uuidStrings));
+    }
+
+    public CompletableFuture<List<ServerResponse>> deleteMany(List<DeleteRequest> requests) {
+        return submit(() -> client.deleteMany(requests));
+    }
+
+    public CompletableFuture<String> getCoordinator() {
+        return submit(client::getCoordinatorHostname);
+    }
+
+    /**
+     * Combines futures into one that completes with every result, in order, once all have
+     * completed, or fails as soon as any of them fails.
+     *
+     * @param futures futures to wait for
+     * @return future of the results
+     */
+    public static <T> CompletableFuture<List<T>> all(List<CompletableFuture<T>> futures) {
+        CompletableFuture<?>[] array = futures.toArray(new CompletableFuture<?>[0]);
+        return CompletableFuture.allOf(array).thenApply(ignored -> {
+            List<T> results = new ArrayList<>(futures.size());
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Creates a user and then looks it up, reading its own write even from a replica.
+     *
+     * @param loginName loginName of the new user
+     * @param realName  realName of the new user
+     * @param password  password for the new user
+     * @return future of the lookup, or of the create's response if the create failed
+     */
+    public CompletableFuture<ServerResponse> createThenLookup(String loginName, String realName, String password) {
+        return create(loginName, realName, password).thenCompose(created ->
+                created.error == ErrorType.NONE ? lookup(loginName) : CompletableFuture.completedFuture(created));
+    }
+
+    /**
+     * Stops accepting calls; calls already submitted still complete.
+     */
+    @Override
+    public void close() {
+        callers.shutdown();
+    }
+
+    /**
+     * Runs a blocking call on the pool and returns its future, failing it if it outlasts the timeout.
+     */
+    private <T> CompletableFuture<T> submit(BlockingCall<T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (RemoteException e) {
+                throw new CompletionException(e);
+            }
+        }, callers).orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * one blocking call on the client
+     */
+    private interface BlockingCall<T> {
+        T call() throws RemoteException;
+    }
+}
@@ -1,20 +1,16 @@
 package src.Client;
 
+import src.Common.CreateRequest;
+import src.Common.DeleteRequest;
 import src.Common.ErrorType;
-import src.Common.IdServerInterface;
+import src.Common.PageResponse;
+import src.Common.ReadConsistency;
 import src.Common.ServerResponse;
 
-import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketAddress;
-import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
-import java.rmi.server.RMISocketFactory;
 import java.security.MessageDigest;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -26,10 +22,13 @@ import java.util.List;
  * @author Anna Rift, Logan Hurd
  */
 public class IdClient {
-    // Initializes a variable to contain our interface for the IdServer
-    IdServerInterface idServerStub = null;
+    // Initializes a variable to contain our client for the IdServers
+    IdServiceClient service = null;
+    // how up to date a replica must be to answer lookups and gets, or null to send every read to the coordinator
+    ReadConsistency readConsistency = null;
 
-    private static final int RMI_TIMEOUT = 2 * 1000;
+    // number of entries requested per page by --get
+    private static final int GET_PAGE_SIZE = 500;
 
     /**
      * This main method checks and handles arguments, then creates an IdClient to
@@ -79,73 +78,18 @@ public class IdClient {
         System.arraycopy(args, flagLocation + 2, queryArgs, 0, numQueryArgs);
 
 
-        // Creates custom RMI sockets
-        try {
-            RMISocketFactory.setSocketFactory(new RMISocketFactory() {
-                // Creates socket with custom settings
-                public Socket createSocket(String host, int port) throws IOException {
-                    Socket socket = new TimeoutSocket(host, port);
-                    socket.setSoTimeout(RMI_TIMEOUT);
-                    socket.setSoLinger(false, 0);
-                    return socket;
-                }
-
-                // Creates new ServerSocket
-                public ServerSocket createServerSocket(int port) throws IOException {
-                    return new ServerSocket(port);
-                }
-
-                // Socket Creator with timeout
-                class TimeoutSocket extends Socket {
-                    public TimeoutSocket(String host, int port) throws IOException {
-                        super(host, port);
-                    }
-
-                    @Override
-                    public void connect(SocketAddress endpoint) throws IOException {
-                        connect(endpoint, RMI_TIMEOUT);
-                    }
-                }
-            });
-        } catch (IOException e) {
-            System.err.println("Could not setup custom sockets for RMI");
-            e.printStackTrace(System.err);
-            exitWithError();
-        }
-
-
-        // set up an IdClient client, then connectToServer and processQuery
+        // set up an IdClient client for the listed servers, then find the coordinator and processQuery
         IdClient client = new IdClient();
-        // asks servers in random order for coordinator address until success
-        Collections.shuffle(hostnames);
-        String coordinatorHostname = null;
-        for (String hostname : hostnames) {
-            try {
-                client.connectToServer(hostname, portNumber);
-                coordinatorHostname = client.getCoordinatorName();
-                if (coordinatorHostname == null) {
-                    continue;
-                }
-                if (!hostnames.contains(coordinatorHostname)) {
-                    System.err.println("Retrieved coordinator address " + coordinatorHostname + " is not in our list of servers");
-                    exitWithError();
-                }
-                System.err.println("Located coordinator " + coordinatorHostname + " via replica " + hostname);
-                break;
-            } catch (RemoteException e) {
-                // TEST PRINT (might be worth keeping though?)
-                System.err.println("Asking remote server " + hostname + " for coordinator failed");
-            }
-        }
-
-        if (coordinatorHostname == null) {
-            System.err.println("Could not get coordinator address from any listed server!");
+        client.service = new IdServiceClient(hostnames, portNumber);
+        try {
+            System.err.println("Located coordinator " + client.service.getCoordinatorHostname());
+        } catch (RemoteException e) {
+            System.err.println(e.getMessage());
             exitWithError();
         }
 
-        // perform actual command on coordinator
+        // perform actual command, on the coordinator unless read options send it to a replica
         try {
-            client.connectToServer(coordinatorHostname, portNumber);
             client.processQuery(queryArgs);
         } catch (RemoteException e) {
             System.err.println("Query or connection to coordinator server failed");
@@ -155,43 +99,13 @@ public class IdClient {
     }
 
     /**
-     * Retrieves and returns coordinator name from connected server.
-     *
-     * @return coordinator's name
-     */
-    String getCoordinatorName() {
-        try {
-            return idServerStub.getCoordinator().responseText;
-        } catch (Exception e) {
-            System.err.println("Failed to retrieve coordinator address from connected server.");
-//            e.printStackTrace(System.err);
-        }
-        return null;
-    }
-
-    /**
-     * This method sets system properties and forms a connection to the IdServer.
+     * Points this client at a single server, which is sent every query.
      *
      * @param host represents name of host
      * @param port represents host's port number
-     * @throws RemoteException connection failed during connectToServer
      */
-    void connectToServer(String host, int port) throws RemoteException {
-        try {
-            // set system properties
-            System.setProperty("java.security.policy", "src/resources/mysecurity.policy");
-            System.setProperty("javax.net.ssl.trustStore", "src/resources/Client_Truststore");
-            System.setProperty("javax.net.ssl.trustStorePassword", "examplepassword");
-
-            // locate registry and look up IdServer
-            Registry registry = LocateRegistry.getRegistry(host, port);
-            idServerStub = (IdServerInterface) registry.lookup("IdServer");
-        } catch (NotBoundException | IOException e) {
-            // print failure message upon exception
-            System.err.println("Retrieving remote server binding failed");
-//            e.printStackTrace(System.err);
-            throw new RemoteException();
-        }
+    void connectToServer(String host, int port) {
+        service = IdServiceClient.connectTo(host, port);
     }
 
     /**
@@ -214,6 +128,17 @@ public class IdClient {
         // declare ServerResponse for communicating with server
         ServerResponse response;
 
+        // read options given ahead of the query
+        int queryStart = 0;
+        while (queryStart + 1 < queryArgs.length && readConsistencyOptionAt(queryArgs, queryStart)) {
+            queryStart += 2;
+        }
+        queryArgs = Arrays.copyOfRange(queryArgs, queryStart, queryArgs.length);
+        if (queryArgs.length == 0) {
+            printUsageAndExit();
+        }
+        service.setReadConsistency(readConsistency);
+
         // switch to mode based on queryArgs input
         String queryType = queryArgs[0];
         try {
@@ -236,7 +161,7 @@ public class IdClient {
                         realName = System.getProperty("user.name");
                         password = hashPassword(queryArgs[3]);
                     }
-                    response = idServerStub.create(loginName, realName, password);
+                    response = service.create(loginName, realName, password);
 
                     // prints message if error is encountered+
                     switch (response.error) {
@@ -260,7 +185,7 @@ public class IdClient {
                     expectMinArgsForQuery(2, queryArgs);
                     loginName = queryArgs[1];
 
-                    response = idServerStub.lookup(loginName);
+                    response = service.lookup(loginName);
                     switch (response.error) {
                         case NONE:
                             System.out.println(response.responseText);
@@ -281,7 +206,7 @@ public class IdClient {
                     expectMinArgsForQuery(2, queryArgs);
                     uuid = queryArgs[1];
 
-                    response = idServerStub.reverseLookup(uuid);
+                    response = service.reverseLookup(uuid);
                     switch (response.error) {
                         case NONE:
                             System.out.println(response.responseText);
@@ -305,7 +230,7 @@ public class IdClient {
                     assertFlagIsPassword(queryArgs[3]);
                     password = hashPassword(queryArgs[4]);
 
-                    response = idServerStub.modify(oldLoginName, newLoginName, password);
+                    response = service.modify(oldLoginName, newLoginName, password);
                     switch (response.error) {
                         case NONE:
                             System.out.println("User modification succeeded");
@@ -334,7 +259,7 @@ public class IdClient {
                     assertFlagIsPassword(queryArgs[2]);
                     password = hashPassword(queryArgs[3]);
 
-                    response = idServerStub.delete(loginName, password);
+                    response = service.delete(loginName, password);
                     switch (response.error) {
                         case NONE:
                             System.out.println("Delete succeeded");
@@ -358,10 +283,11 @@ public class IdClient {
                     expectMinArgsForQuery(2, queryArgs);
                     String whatToGet = queryArgs[1];
 
-                    response = idServerStub.get(whatToGet);
-                    switch (response.error) {
+                    String opening = whatToGet.equals("all") ? "{" : "[";
+                    String closing = whatToGet.equals("all") ? "}" : "]";
+                    ErrorType getError = printAllPages(cursor -> service.getPage(whatToGet, cursor, GET_PAGE_SIZE), opening, closing);
+                    switch (getError) {
                         case NONE:
-                            System.out.println(response.responseText);
                             success = true;
                             break;
                         case MALFORMED_INPUT:
@@ -369,11 +295,156 @@ public class IdClient {
                             printQueryUsage();
                             break;
                         default:
-                            unexpectedErrorType(response.error);
+                            unexpectedErrorType(getError);
+                            break;
+                    }
+                    break;
+
+                // finds usernames starting with or containing some text
+                case "--search":
+                    expectMinArgsForQuery(3, queryArgs);
+                    String searchType = queryArgs[1];
+                    String pattern = queryArgs[2];
+
+                    ErrorType searchError = printAllPages(cursor -> service.search(searchType, pattern, cursor, GET_PAGE_SIZE), "[", "]");
+                    switch (searchError) {
+                        case NONE:
+                            success = true;
+                            break;
+                        case MALFORMED_INPUT:
+                            System.err.println("Search must be one of prefix or substring, with non-empty text of at least 3 characters for substring");
+                            printQueryUsage();
+                            break;
+                        default:
+                            unexpectedErrorType(searchError);
                             break;
                     }
                     break;
 
+                // create several users sharing one password in a single call
+                case "--create-many":
+                    expectMinArgsForQuery(4, queryArgs);
+                    assertFlagIsPassword(queryArgs[1]);
+                    password = hashPassword(queryArgs[2]);
+                    String batchRealName = System.getProperty("user.name");
+                    List<String> createNames = Arrays.asList(queryArgs).subList(3, queryArgs.length);
+                    List<CreateRequest> createRequests = new ArrayList<>();
+                    for (String name : createNames) {
+                        createRequests.add(new CreateRequest(name, batchRealName, password));
+                    }
+
+                    List<ServerResponse> createResponses = service.createMany(createRequests);
+                    success = true;
+                    for (int i = 0; i < createNames.size(); i++) {
+                        response = createResponses.get(i);
+                        switch (response.error) {
+                            case NONE:
+                                System.out.println("Created login entry for name " + createNames.get(i) + " with UUID " + response.responseText);
+                                break;
+                            case NAME_COLLISION:
+                                System.err.println("User with name '" + createNames.get(i) + "' already exists");
+                                success = false;
+                                break;
+                            default:
+                                unexpectedErrorType(response.error);
+                                success = false;
+                                break;
+                        }
+                    }
+                    break;
+
+                // look up several users by username in a single call
+                case "--lookup-many":
+                    expectMinArgsForQuery(2, queryArgs);
+                    List<String> lookupNames = new ArrayList<>(Arrays.asList(queryArgs).subList(1, queryArgs.length));
+
+                    List<ServerResponse> lookupResponses = service.lookupMany(lookupNames);
+                    success = true;
+                    for (int i = 0; i < lookupNames.size(); i++) {
+                        response = lookupResponses.get(i);
+                        switch (response.error) {
+                            case NONE:
+                                System.out.println(response.responseText);
+                                break;
+                            case NO_SUCH_USER:
+                                System.err.println("User with name '" + lookupNames.get(i) + "' does not exist");
+                                success = false;
+                                break;
+                            default:
+                                unexpectedErrorType(response.error);
+                                success = false;
+                                break;
+                        }
+                    }
+                    break;
+
+                // look up several users by uuid in a single call
+                case "--reverse-lookup-many":
+                    expectMinArgsForQuery(2, queryArgs);
+                    List<String> lookupUuids = new ArrayList<>(Arrays.asList(queryArgs).subList(1, queryArgs.length));
+
+                    List<ServerResponse> reverseLookupResponses = service.reverseLookupMany(lookupUuids);
+                    success = true;
+                    for (int i = 0; i < lookupUuids.size(); i++) {
+                        response = reverseLookupResponses.get(i);
+                        switch (response.error) {
+                            case NONE:
+                                System.out.println(response.responseText);
+                                break;
+                            case NO_SUCH_USER:
+                                System.err.println("Requested UUID '" + lookupUuids.get(i) + "' does not exist");
+                                success = false;
+                                break;
+                            default:
+                                unexpectedErrorType(response.error);
+                                success = false;
+                                break;
+                        }
+                    }
+                    break;
+
+                // delete several users sharing one password in a single call
+                case "--delete-many":
+                    expectMinArgsForQuery(4, queryArgs);
+                    assertFlagIsPassword(queryArgs[1]);
+                    password = hashPassword(queryArgs[2]);
+                    List<String> deleteNames = Arrays.asList(queryArgs).subList(3, queryArgs.length);
+                    List<DeleteRequest> deleteRequests = new ArrayList<>();
+                    for (String name : deleteNames) {
+                        deleteRequests.add(new DeleteRequest(name, password));
+                    }
+
+                    List<ServerResponse> deleteResponses = service.deleteMany(deleteRequests);
+                    success = true;
+                    for (int i = 0; i < deleteNames.size(); i++) {
+                        response = deleteResponses.get(i);
+                        switch (response.error) {
+                            case NONE:
+                                System.out.println("Delete of '" + deleteNames.get(i) + "' succeeded");
+                                break;
+                            case NO_SUCH_USER:
+                                System.err.println("Login name '" + deleteNames.get(i) + "' does not exist");
+                                success = false;
+                                break;
+                            case INCORRECT_PASSWORD:
+                                System.err.println("Incorrect password for '" + deleteNames.get(i) + "'");
+                                success = false;
+                                break;
+                            default:
+                                unexpectedErrorType(response.error);
+                                success = false;
+                                break;
+                        }
+                    }
+                    break;
+
+                // prints the metrics of one server, the coordinator unless another is named
+                case "--stats":
+                    String statsHostname = (queryArgs.length > 1) ? queryArgs[1] : service.getCoordinatorHostname();
+                    System.out.print(service.getMetrics(statsHostname));
+                    success = true;
+                    break;
+
                 // prints notification that query is unrecognized and usage, then exits
                 default:
                     System.err.println("Unrecognized query type '" + queryType + "'");
@@ -384,11 +455,75 @@ public class IdClient {
             // makes sure success is false
             success = false;
         }
+        if (readConsistency != null && success) {
+            System.err.println("Timestamp: " + service.getLastSeenTimestamp());
+        }
 
         // returns whether success is true
         return success;
     }
 
+    /**
+     * Reads the read consistency option at position i of queryArgs, if there is one there.
+     *
+     * @param queryArgs arguments for this query
+     * @param i         position of a possible option; its value follows it
+     * @return true if an option was read
+     */
+    private boolean readConsistencyOptionAt(String[] queryArgs, int i) {
+        ReadConsistency current = (readConsistency == null) ? ReadConsistency.any() : readConsistency;
+        try {
+            switch (queryArgs[i]) {
+                case "--max-staleness":
+                    readConsistency = new ReadConsistency(current.minTimestamp, Long.parseLong(queryArgs[i + 1]));
+                    return true;
+                case "--min-timestamp":
+                    readConsistency = current.withMinTimestamp(Long.parseLong(queryArgs[i + 1]));
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Option " + queryArgs[i] + " needs a number (got '" + queryArgs[i + 1] + "')");
+            printUsageAndExit();
+            return false;
+        }
+    }
+
+    /**
+     * Fetches every page of a paginated listing and prints each as it arrives, so
+     * neither side holds the whole listing. Entries are printed comma-separated
+     * between opening and closing; nothing is printed if the first page fails.
+     *
+     * @param fetcher fetches the page following a cursor (null for the first page)
+     * @param opening text printed before the first entry
+     * @param closing text printed after the last entry
+     * @return error of the first failed page, or NONE if every page succeeded
+     * @throws RemoteException connection failed while fetching a page
+     */
+    private static ErrorType printAllPages(PageFetcher fetcher, String opening, String closing) throws RemoteException {
+        String cursor = null;
+        boolean firstItem = true;
+        PageResponse page;
+        do {
+            page = fetcher.fetch(cursor);
+            if (page.error != ErrorType.NONE) {
+                if (!firstItem) {
+                    System.out.println();
+                }
+                return page.error;
+            }
+            for (String item : page.items) {
+                System.out.print((firstItem ? opening : ", ") + item);
+                firstItem = false;
+            }
+            cursor = page.nextCursor;
+        } while (page.hasMore());
+
+        System.out.println(firstItem ? opening + closing : closing);
+        return ErrorType.NONE;
+    }
+
     /**
      * handles unexpected error types by printing error message and exiting
      *
@@ -458,7 +593,13 @@ public class IdClient {
      * prints usage information
      */
     private static void printUsage() {
-        System.err.println("Usage: $ java IdClient --server <serverhosts> --numport <port#> <query>");
+        System.err.println("Usage: $ java IdClient --server <serverhosts> --numport <port#> [<read options>] <query>");
+        System.err.println();
+        System.err.println("Read options let --lookup, --reverse-lookup and --get be answered by a replica instead of the");
+        System.err.println("coordinator, falling back to the coordinator if the replica is too far behind:");
+        System.err.println("--max-staleness <ms>   the replica must have been up to date within this many milliseconds");
+        System.err.println("--min-timestamp <t>    the replica must have applied the write reported with this timestamp");
+        System.err.println("Each response's timestamp is printed when a read option is given.");
         System.err.println();
         printQueryUsage();
     }
@@ -492,6 +633,20 @@ public class IdClient {
         System.err.println();
         System.err.println("--get users|uuids|all The client contacts the server and obtains either a list all login");
         System.err.println("names, list of all UUIDs or a list of user, UUID and string description all accounts");
+        System.err.println();
+        System.err.println("--search prefix|substring <text> The client contacts the server and obtains a list of");
+        System.err.println("all login names that start with, or contain, the given text (at least 3 characters for substring)");
+        System.err.println();
+        System.err.println("--create-many --password <password> <loginname>...");
+        System.err.println("--lookup-many <loginname>...");
+        System.err.println("--reverse-lookup-many <UUID>...");
+        System.err.println("--delete-many --password <password> <loginname>...");
+        System.err.println("Batch versions of the queries above, sent to the server as a single request. Each");
+        System.err.println("login name or UUID is reported on separately; the batch succeeds only if all of them do.");
+        System.err.println();
+        System.err.println("--stats [<serverhost>]");
+        System.err.println("Prints a server's request latencies, error counts and replication statistics. Asks the");
+        System.err.println("coordinator unless another server is named.");
     }
 
     /**
@@ -509,6 +664,13 @@ public class IdClient {
         System.exit(1);
     }
 
+    /**
+     * fetches one page of a paginated listing from the server
+     */
+    private interface PageFetcher {
+        PageResponse fetch(String cursor) throws RemoteException;
+    }
+
     /**
      * class represents an exception where the input password is incorrect
      */
@@ -1,11 +1,15 @@
 package src.Client;
 
+import src.Common.ErrorType;
+import src.Common.ServerResponse;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -84,6 +88,11 @@ public class IdClientTesting {
                 true,
                 new String[]{"arift", "lhurd", "testuser"},
                 null);
+        // checks response of --get in the event that an unknown listing is requested
+        testQuery("--get passwords",
+                false,
+                null,
+                new String[]{"Get must request one of users, uuids, or all"});
         // checks response of --delete in the event that the password is incorrect
         testQuery("--delete arift --password " + INCORRECT_PW,
                 false,
@@ -139,6 +148,219 @@ public class IdClientTesting {
                 false,
                 null,
                 new String[]{"Requested UUID does not exist"});
+        // checks response of --create-many when every name is free
+        testQuery("--create-many --password " + CORRECT_PW + " batch1 batch2 batch3",
+                true,
+                new String[]{"Created login entry for name batch1", "Created login entry for name batch3"},
+                null);
+        // checks response of --create-many when one name is already taken
+        testQuery("--create-many --password " + CORRECT_PW + " batch4 batch1",
+                false,
+                new String[]{"Created login entry for name batch4"},
+                new String[]{"User with name 'batch1' already exists"});
+        // checks response of --lookup-many with a mix of existing and missing users
+        testQuery("--lookup-many batch1 nosuchuser batch4",
+                false,
+                new String[]{"loginName=batch1", "loginName=batch4"},
+                new String[]{"'nosuchuser' does not exist"});
+        // checks response of --reverse-lookup-many when input uuid does not exist
+        testQuery("--reverse-lookup-many not_a_valid_uuid",
+                false,
+                null,
+                new String[]{"Requested UUID 'not_a_valid_uuid' does not exist"});
+        // checks response of --search for names starting with some text
+        testQuery("--search prefix batch",
+                true,
+                new String[]{"[batch1, batch2, batch3, batch4]"},
+                null);
+        // checks response of --search for names containing some text
+        testQuery("--search substring atch4",
+                true,
+                new String[]{"[batch4]"},
+                null);
+        // checks response of --search for names containing text shorter than an n-gram
+        testQuery("--search substring 2",
+                false,
+                null,
+                new String[]{"at least 3 characters for substring"});
+        // checks response of --search when nothing matches
+        testQuery("--search substring nomatch",
+                true,
+                new String[]{"[]"},
+                null);
+        // checks response of --search with an unknown search type
+        testQuery("--search suffix batch",
+                false,
+                null,
+                new String[]{"Search must be one of prefix or substring"});
+        // checks response of --delete-many when the password is correct for every user
+        testQuery("--delete-many --password " + CORRECT_PW + " batch1 batch2 batch3 batch4",
+                true,
+                new String[]{"Delete of 'batch1' succeeded", "Delete of 'batch4' succeeded"},
+                null);
+        // checks response of --get when input is 'users' after batch changes
+        testQuery("--get users",
+                true,
+                new String[]{"[avrift, lhurd]"},
+                null);
+        // checks that --lookup with read options reports the timestamp it was answered at
+        testQuery("--max-staleness 1000 --min-timestamp 1 --lookup avrift",
+                true,
+                new String[]{"loginName=avrift"},
+                new String[]{"Timestamp: "});
+        // checks that --get with read options still fetches every page
+        testQuery("--max-staleness 0 --get users",
+                true,
+                new String[]{"[avrift, lhurd]"},
+                new String[]{"Timestamp: "});
+        // checks that many concurrent calls through the asynchronous client all complete
+        testAsyncClient(200);
+        // checks that concurrent writes to the same and to different loginNames leave consistent data
+        testConcurrentWrites(64);
+        // checks that --stats reports latencies and the errors returned by the tests above
+        testQuery("--stats",
+                true,
+                new String[]{"Metrics for ", "create ", "create.NAME_COLLISION", "lookupMany.NO_SUCH_USER"},
+                null);
+    }
+
+    /**
+     * Creates, looks up and deletes many users at once through AsyncIdServiceClient,
+     * checking every call succeeds.
+     *
+     * @param numUsers number of users to create
+     */
+    private static void testAsyncClient(int numUsers) {
+        currentTestNumber++;
+        System.out.println("Executing test " + currentTestNumber + ": " + numUsers + " concurrent users through the async client");
+        try (AsyncIdServiceClient client = new AsyncIdServiceClient(IdServiceClient.connectTo(TESTING_HOST, TESTING_PORT), 1, 8, 10 * 1000)) {
+            List<CompletableFuture<ServerResponse>> lookups = new ArrayList<>();
+            for (int i = 0; i < numUsers; i++) {
+                lookups.add(client.createThenLookup("async" + i, "Async " + i, CORRECT_PW));
+            }
+            List<ServerResponse> found = AsyncIdServiceClient.all(lookups).join();
+            for (int i = 0; i < numUsers; i++) {
+                if (found.get(i).error != ErrorType.NONE || !found.get(i).responseText.contains("loginName=async" + i)) {
+                    assertionFailure("Async create then lookup of async" + i + " returned " + found.get(i).error);
+                }
+            }
+
+            List<CompletableFuture<ServerResponse>> deletes = new ArrayList<>();
+            for (int i = 0; i < numUsers; i++) {
+                deletes.add(client.delete("async" + i, CORRECT_PW));
+            }
+            for (ServerResponse response : AsyncIdServiceClient.all(deletes).join()) {
+                if (response.error != ErrorType.NONE) {
+                    assertionFailure("Async delete returned " + response.error);
+                }
+            }
+        } catch (CompletionException e) {
+            assertionFailure("Async call failed: " + e.getCause());
+        }
+        System.err.println("Test " + currentTestNumber + " succeeded");
+    }
+
+    /**
+     * Races many writes against each other: creates of one loginName, renames of different
+     * users onto one loginName, and renames of different users to different loginNames.
+     * Exactly one of each contended write must win, every disjoint write must succeed,
+     * and lookups afterwards must match.
+     *
+     * @param numWriters number of writes in each race
+     */
+    private static void testConcurrentWrites(int numWriters) {
+        currentTestNumber++;
+        System.out.println("Executing test " + currentTestNumber + ": " + numWriters + " concurrent writers");
+        try (AsyncIdServiceClient client = new AsyncIdServiceClient(IdServiceClient.connectTo(TESTING_HOST, TESTING_PORT), 1, 16, 10 * 1000)) {
+            List<CompletableFuture<ServerResponse>> creates = new ArrayList<>();
+            for (int i = 0; i < numWriters; i++) {
+                creates.add(client.create("contended", "Writer " + i, CORRECT_PW));
+            }
+            expectOneWinner(AsyncIdServiceClient.all(creates).join(), "create of contended");
+
+            List<CompletableFuture<ServerResponse>> setup = new ArrayList<>();
+            for (int i = 0; i < numWriters; i++) {
+                setup.add(client.create("mover" + i, "Mover " + i, CORRECT_PW));
+            }
+            expectAll(AsyncIdServiceClient.all(setup).join(), ErrorType.NONE, "create of movers");
+
+            List<CompletableFuture<ServerResponse>> renames = new ArrayList<>();
+            for (int i = 0; i < numWriters; i++) {
+                // even movers all want the same name, odd movers each get their own
+                String target = (i % 2 == 0) ? "renamed" : "moved" + i;
+                renames.add(client.modify("mover" + i, target, CORRECT_PW));
+            }
+            List<ServerResponse> renamed = AsyncIdServiceClient.all(renames).join();
+            List<ServerResponse> contendedRenames = new ArrayList<>();
+            for (int i = 0; i < numWriters; i++) {
+                if (i % 2 == 0) {
+                    contendedRenames.add(renamed.get(i));
+                } else if (renamed.get(i).error != ErrorType.NONE) {
+                    assertionFailure("Rename of mover" + i + " returned " + renamed.get(i).error);
+                }
+            }
+            expectOneWinner(contendedRenames, "rename onto renamed");
+
+            List<String> remaining = new ArrayList<>(List.of("contended", "renamed"));
+            for (int i = 0; i < numWriters; i++) {
+                // a mover that was renamed must be gone from its old name, and one that lost its race must still be there
+                boolean moved = renamed.get(i).error == ErrorType.NONE;
+                expectLookup(client, "mover" + i, !moved);
+                if (i % 2 == 1) {
+                    expectLookup(client, "moved" + i, true);
+                    remaining.add("moved" + i);
+                } else if (!moved) {
+                    remaining.add("mover" + i);
+                }
+            }
+
+            List<CompletableFuture<ServerResponse>> deletes = new ArrayList<>();
+            for (String loginName : remaining) {
+                deletes.add(client.delete(loginName, CORRECT_PW));
+            }
+            expectAll(AsyncIdServiceClient.all(deletes).join(), ErrorType.NONE, "cleanup delete");
+        } catch (CompletionException e) {
+            assertionFailure("Concurrent call failed: " + e.getCause());
+        }
+        System.err.println("Test " + currentTestNumber + " succeeded");
+    }
+
+    /**
+     * Checks that exactly one response succeeded and the rest were NAME_COLLISION.
+     */
+    private static void expectOneWinner(List<ServerResponse> responses, String what) {
+        int winners = 0;
+        for (ServerResponse response : responses) {
+            if (response.error == ErrorType.NONE) {
+                winners++;
+            } else if (response.error != ErrorType.NAME_COLLISION) {
+                assertionFailure("Concurrent " + what + " returned " + response.error);
+            }
+        }
+        if (winners != 1) {
+            assertionFailure("Expected exactly one " + what + " to succeed, but " + winners + " did");
+        }
+    }
+
+    /**
+     * Checks that every response has the given error type.
+     */
+    private static void expectAll(List<ServerResponse> responses, ErrorType expected, String what) {
+        for (ServerResponse response : responses) {
+            if (response.error != expected) {
+                assertionFailure("Concurrent " + what + " returned " + response.error + " instead of " + expected);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a loginName can be looked up.
+     */
+    private static void expectLookup(AsyncIdServiceClient client, String loginName, boolean shouldExist) {
+        ServerResponse response = client.lookup(loginName).join();
+        if ((response.error == ErrorType.NONE) != shouldExist) {
+            assertionFailure("Lookup of " + loginName + " returned " + response.error + " after concurrent writes");
+        }
     }
 
     /**
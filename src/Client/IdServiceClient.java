@@ -0,0 +1,455 @@
+package src.Client;
+
+import src.Common.AdminInterface;
+import src.Common.CreateRequest;
+import src.Common.DeleteRequest;
+import src.Common.ErrorType;
+import src.Common.IdServerInterface;
+import src.Common.MetricsSnapshot;
+import src.Common.PageResponse;
+import src.Common.ReadConsistency;
+import src.Common.ServerResponse;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.RMISocketFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Long-lived, thread-safe client for a group of IdServers, meant to be created once and
+ * shared. Stubs are looked up once per server and reused, so calls share RMI's pooled
+ * connections instead of handshaking each time. The coordinator is found once and cached
+ * until a call to it fails or a server answers NOT_COORDINATOR, at which point it is found
+ * again and the call retried once.
+ *
+ * When a read consistency is set, lookups and gets are sent to a replica instead, falling
+ * back to the coordinator if the replica is too far behind or unreachable. Every read also
+ * reflects every response this client has already seen, so it sees its own writes.
+ */
+public class IdServiceClient {
+    private static final int RMI_TIMEOUT = 2 * 1000;
+    // how long a server may wait for an election to finish before answering, inside RMI_TIMEOUT
+    private static final int COORDINATOR_WAIT = RMI_TIMEOUT / 2;
+    private static final String RMI_REMOTE_NAME = "IdServer";
+    private static final String RMI_ADMIN_REMOTE_NAME = "IdServerAdmin";
+    private static boolean rmiConfigured = false;
+
+    private final List<String> hostnames;
+    private final int port;
+    // whether to look up and follow the coordinator, or always talk to the one listed server
+    private final boolean followCoordinator;
+    // stub for each server looked up so far
+    private final ConcurrentHashMap<String, IdServerInterface> stubs = new ConcurrentHashMap<>();
+    // cached coordinator address, or null until it is next needed
+    private volatile String coordinatorHostname = null;
+    // replica reads are sent to, chosen at random
+    private volatile String readHostname = null;
+    // how up to date replica reads must be, or null to send every read to the coordinator
+    private volatile ReadConsistency readConsistency = null;
+    // latest timestamp seen in any response
+    private volatile long lastSeenTimestamp = -1;
+    // most calls in flight to any one server, or 0 for no limit
+    private volatile int maxCallsPerServer = 0;
+    // permits for calls to each server, while maxCallsPerServer is set
+    private final ConcurrentHashMap<String, Semaphore> callPermits = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a client for a group of servers. Nothing is contacted until the first call.
+     *
+     * @param hostnames every server in the group
+     * @param port      port the servers' registries listen on
+     */
+    public IdServiceClient(List<String> hostnames, int port) {
+        this(hostnames, port, true);
+    }
+
+    private IdServiceClient(List<String> hostnames, int port, boolean followCoordinator) {
+        if (hostnames.isEmpty()) {
+            throw new IllegalArgumentException("At least one server hostname is needed");
+        }
+        List<String> shuffled = new ArrayList<>(hostnames);
+        // so coordinator lookups and replica reads from many clients spread across the servers
+        Collections.shuffle(shuffled);
+        this.hostnames = Collections.unmodifiableList(shuffled);
+        this.port = port;
+        this.followCoordinator = followCoordinator;
+        configureRmi();
+    }
+
+    /**
+     * Creates a client that sends everything to one server, without looking up the coordinator.
+     *
+     * @param hostname server to talk to
+     * @param port     port its registry listens on
+     * @return the client
+     */
+    public static IdServiceClient connectTo(String hostname, int port) {
+        return new IdServiceClient(Collections.singletonList(hostname), port, false);
+    }
+
+    /**
+     * Sets how up to date a replica must be to answer lookups and gets.
+     *
+     * @param consistency requirement for replica reads, or null to send every read to the coordinator
+     */
+    public void setReadConsistency(ReadConsistency consistency) {
+        this.readConsistency = consistency;
+    }
+
+    /**
+     * Limits how many calls may be in flight to any one server at once; further calls wait their turn.
+     * Must be set before the first call.
+     *
+     * @param maxCalls most calls in flight to one server, or 0 for no limit
+     */
+    public void setMaxCallsPerServer(int maxCalls) {
+        this.maxCallsPerServer = maxCalls;
+    }
+
+    /**
+     * @return latest timestamp seen in any response, to pass to another client as ReadConsistency.atLeast
+     */
+    public long getLastSeenTimestamp() {
+        return lastSeenTimestamp;
+    }
+
+    /**
+     * Returns the coordinator's address, asking the servers for it if it is not cached.
+     *
+     * @return coordinator's address
+     * @throws RemoteException no server could name a coordinator
+     */
+    public String getCoordinatorHostname() throws RemoteException {
+        String coordinator = coordinatorHostname;
+        if (coordinator == null) {
+            coordinator = followCoordinator ? findCoordinator() : hostnames.get(0);
+            coordinatorHostname = coordinator;
+        }
+        return coordinator;
+    }
+
+    public ServerResponse create(String loginName, String realName, String password) throws RemoteException {
+        return write(server -> server.create(loginName, realName, password));
+    }
+
+    public ServerResponse modify(String oldLoginName, String newLoginName, String password) throws RemoteException {
+        return write(server -> server.modify(oldLoginName, newLoginName, password));
+    }
+
+    public ServerResponse delete(String loginName, String password) throws RemoteException {
+        return write(server -> server.delete(loginName, password));
+    }
+
+    public ServerResponse lookup(String loginName) throws RemoteException {
+        return read((server, consistency) -> server.lookup(loginName, consistency));
+    }
+
+    public ServerResponse reverseLookup(String uuidString) throws RemoteException {
+        return read((server, consistency) -> server.reverseLookup(uuidString, consistency));
+    }
+
+    public ServerResponse get(String whatToGet) throws RemoteException {
+        return observe(onCoordinator(server -> server.get(whatToGet), true));
+    }
+
+    public PageResponse getPage(String whatToGet, String cursor, int pageSize) throws RemoteException {
+        return read((server, consistency) -> server.getPage(whatToGet, cursor, pageSize, consistency));
+    }
+
+    public PageResponse search(String searchType, String pattern, String cursor, int limit) throws RemoteException {
+        return observe(onCoordinator(server -> server.search(searchType, pattern, cursor, limit), true));
+    }
+
+    public List<ServerResponse> createMany(List<CreateRequest> requests) throws RemoteException {
+        return observeAll(onCoordinator(server -> server.createMany(requests), false));
+    }
+
+    public List<ServerResponse> lookupMany(List<String> loginNames) throws RemoteException {
+        return observeAll(onCoordinator(server -> server.lookupMany(loginNames), true));
+    }
+
+    public List<ServerResponse> reverseLookupMany(List<String> uuidStrings) throws RemoteException {
+        return observeAll(onCoordinator(server -> server.reverseLookupMany(uuidStrings), true));
+    }
+
+    public List<ServerResponse> deleteMany(List<DeleteRequest> requests) throws RemoteException {
+        return observeAll(onCoordinator(server -> server.deleteMany(requests), false));
+    }
+
+    /**
+     * Fetches one server's metrics. Unlike other calls this always goes to the named server,
+     * which need not be the coordinator.
+     *
+     * @param hostname server to ask
+     * @return the server's metrics right now
+     * @throws RemoteException the server could not be reached
+     */
+    public MetricsSnapshot getMetrics(String hostname) throws RemoteException {
+        return adminStubFor(hostname).getMetrics();
+    }
+
+    /**
+     * Changes which lines one server logs.
+     *
+     * @param hostname server to change
+     * @param level    one of trace, debug, error or off
+     * @return the server's level before the change
+     * @throws RemoteException the server could not be reached
+     */
+    public String setLogLevel(String hostname, String level) throws RemoteException {
+        return adminStubFor(hostname).setLogLevel(level);
+    }
+
+    /**
+     * Sends a write to the coordinator, following a NOT_COORDINATOR answer to the server it names.
+     */
+    private ServerResponse write(ServerCall<ServerResponse> call) throws RemoteException {
+        ServerResponse response = onCoordinator(call, false);
+        if (response.error == ErrorType.NOT_COORDINATOR && followCoordinator) {
+            // the coordinator changed since we cached it; the answer names the new one if it knows
+            coordinatorHostname = hostnames.contains(response.responseText) ? response.responseText : null;
+            response = onCoordinator(call, false);
+        }
+        return observe(response);
+    }
+
+    /**
+     * Sends a read to the replica if a read consistency is set, and to the coordinator otherwise
+     * or if the replica is too far behind or cannot be reached.
+     */
+    private <T extends ServerResponse> T read(ReadCall<T> call) throws RemoteException {
+        ReadConsistency requested = readConsistency;
+        ReadConsistency consistency = ((requested == null) ? ReadConsistency.any() : requested).withMinTimestamp(lastSeenTimestamp);
+        if (requested != null && followCoordinator) {
+            String replica = getReadHostname();
+            if (replica != null) {
+                try {
+                    T response = invoke(replica, server -> call.read(server, consistency));
+                    if (response.error != ErrorType.STALE_REPLICA) {
+                        return observe(response);
+                    }
+                } catch (RemoteException e) {
+                    forget(replica);
+                    // try another replica next time
+                    readHostname = null;
+                }
+            }
+        }
+        return observe(onCoordinator(server -> call.read(server, consistency), true));
+    }
+
+    /**
+     * Makes a call on the cached coordinator. If the call fails, the coordinator is looked up
+     * again and the call retried once, but only if it is safe to repeat: reads always are, and
+     * writes only when the call never reached the server.
+     *
+     * @param call       call to make
+     * @param idempotent whether the call can be repeated however far it got
+     * @return the coordinator's response
+     * @throws RemoteException the call failed twice, or could not be retried
+     */
+    private <T> T onCoordinator(ServerCall<T> call, boolean idempotent) throws RemoteException {
+        String coordinator = getCoordinatorHostname();
+        try {
+            return invoke(coordinator, call);
+        } catch (RemoteException e) {
+            forget(coordinator);
+            if (!idempotent && !neverDelivered(e)) {
+                throw e;
+            }
+        }
+        return invoke(getCoordinatorHostname(), call);
+    }
+
+    /**
+     * Makes a call on a server, waiting for a permit first if calls per server are limited.
+     */
+    private <T> T invoke(String hostname, ServerCall<T> call) throws RemoteException {
+        int maxCalls = maxCallsPerServer;
+        if (maxCalls <= 0) {
+            return call.call(stubFor(hostname));
+        }
+        Semaphore permits = callPermits.computeIfAbsent(hostname, h -> new Semaphore(maxCalls));
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted waiting to call " + hostname, e);
+        }
+        try {
+            return call.call(stubFor(hostname));
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Asks the servers in turn for the coordinator's address until one answers.
+     */
+    private String findCoordinator() throws RemoteException {
+        for (String hostname : hostnames) {
+            try {
+                String coordinator = invoke(hostname, server -> server.getCoordinator(COORDINATOR_WAIT)).responseText;
+                if (coordinator == null) {
+                    continue;
+                }
+                if (!hostnames.contains(coordinator)) {
+                    throw new RemoteException("Retrieved coordinator address " + coordinator + " is not in our list of servers");
+                }
+                return coordinator;
+            } catch (RemoteException e) {
+                forget(hostname);
+            }
+        }
+        throw new RemoteException("Could not get coordinator address from any listed server");
+    }
+
+    /**
+     * @return replica to send reads to, or null if every listed server is the coordinator
+     */
+    private String getReadHostname() throws RemoteException {
+        String replica = readHostname;
+        if (replica == null) {
+            List<String> candidates = new ArrayList<>(hostnames);
+            candidates.remove(getCoordinatorHostname());
+            if (candidates.isEmpty()) {
+                return null;
+            }
+            replica = candidates.get((int) (Math.random() * candidates.size()));
+            readHostname = replica;
+        }
+        return replica;
+    }
+
+    /**
+     * @return cached stub for a server, looking it up the first time
+     */
+    private IdServerInterface stubFor(String hostname) throws RemoteException {
+        IdServerInterface stub = stubs.get(hostname);
+        if (stub == null) {
+            try {
+                Registry registry = LocateRegistry.getRegistry(hostname, port);
+                stub = (IdServerInterface) registry.lookup(RMI_REMOTE_NAME);
+            } catch (NotBoundException e) {
+                throw new RemoteException("No IdServer bound at " + hostname, e);
+            }
+            stubs.put(hostname, stub);
+        }
+        return stub;
+    }
+
+    /**
+     * @return stub for a server's admin interface, looked up afresh since admin calls are rare
+     */
+    private AdminInterface adminStubFor(String hostname) throws RemoteException {
+        try {
+            Registry registry = LocateRegistry.getRegistry(hostname, port);
+            return (AdminInterface) registry.lookup(RMI_ADMIN_REMOTE_NAME);
+        } catch (NotBoundException e) {
+            throw new RemoteException("No admin interface bound at " + hostname, e);
+        }
+    }
+
+    /**
+     * Drops a server's cached stub after a failed call, and the cached coordinator if it was that server.
+     */
+    private void forget(String hostname) {
+        stubs.remove(hostname);
+        if (hostname.equals(coordinatorHostname) && followCoordinator) {
+            coordinatorHostname = null;
+        }
+    }
+
+    /**
+     * @return true if a call failed before the server could have received it
+     */
+    private static boolean neverDelivered(RemoteException e) {
+        return e instanceof ConnectException || e instanceof ConnectIOException || e instanceof NoSuchObjectException;
+    }
+
+    private <T extends ServerResponse> T observe(T response) {
+        if (response.timestamp > lastSeenTimestamp) {
+            synchronized (this) {
+                lastSeenTimestamp = Math.max(lastSeenTimestamp, response.timestamp);
+            }
+        }
+        return response;
+    }
+
+    private List<ServerResponse> observeAll(List<ServerResponse> responses) {
+        for (ServerResponse response : responses) {
+            observe(response);
+        }
+        return responses;
+    }
+
+    /**
+     * Sets the system properties and socket timeouts RMI needs to reach the servers; only the first call has any effect.
+     */
+    private static synchronized void configureRmi() {
+        if (rmiConfigured) {
+            return;
+        }
+        rmiConfigured = true;
+        System.setProperty("java.security.policy", "src/resources/mysecurity.policy");
+        System.setProperty("javax.net.ssl.trustStore", "src/resources/Client_Truststore");
+        System.setProperty("javax.net.ssl.trustStorePassword", "examplepassword");
+        try {
+            RMISocketFactory.setSocketFactory(new RMISocketFactory() {
+                // Creates socket with custom settings
+                public Socket createSocket(String host, int port) throws IOException {
+                    Socket socket = new TimeoutSocket(host, port);
+                    socket.setSoTimeout(RMI_TIMEOUT);
+                    socket.setSoLinger(false, 0);
+                    return socket;
+                }
+
+                // Creates new ServerSocket
+                public ServerSocket createServerSocket(int port) throws IOException {
+                    return new ServerSocket(port);
+                }
+
+                // Socket Creator with timeout
+                class TimeoutSocket extends Socket {
+                    public TimeoutSocket(String host, int port) throws IOException {
+                        super(host, port);
+                    }
+
+                    @Override
+                    public void connect(SocketAddress endpoint) throws IOException {
+                        connect(endpoint, RMI_TIMEOUT);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            // another part of the program already installed a factory, which we leave alone
+        }
+    }
+
+    /**
+     * makes one call on a server
+     */
+    private interface ServerCall<T> {
+        T call(IdServerInterface server) throws RemoteException;
+    }
+
+    /**
+     * sends one read to a server with a read consistency
+     */
+    private interface ReadCall<T extends ServerResponse> {
+        T read(IdServerInterface server, ReadConsistency consistency) throws RemoteException;
+    }
+}
@@ -0,0 +1,30 @@
+package src.Common;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Operator interface to one IdServer, bound in its registry beside the client and replica
+ * interfaces. Unlike IdServerInterface it always describes the server it is called on,
+ * whether or not that server is the coordinator.
+ */
+public interface AdminInterface extends Remote {
+
+    /**
+     * Gets the server's latency histograms, counters and gauges as they are right now.
+     *
+     * @return snapshot of the server's metrics
+     * @throws RemoteException connection failed
+     */
+    MetricsSnapshot getMetrics() throws RemoteException;
+
+    /**
+     * Changes which lines the server logs, taking effect immediately.
+     *
+     * @param level one of trace, debug, error or off
+     * @return the level before the change
+     * @throws RemoteException connection failed
+     * @throws IllegalArgumentException level is not one of the above
+     */
+    String setLogLevel(String level) throws RemoteException;
+}
@@ -0,0 +1,25 @@
+package src.Common;
+
+import java.io.Serializable;
+
+/**
+ * Class to represent one user to be created by a createMany call
+ */
+public class CreateRequest implements Serializable {
+    public String loginName;
+    public String realName;
+    public String password;
+
+    /**
+     * constructor for a create request
+     *
+     * @param loginName loginName of the new user (must be unique)
+     * @param realName  realName of the new user
+     * @param password  password for the new user
+     */
+    public CreateRequest(String loginName, String realName, String password) {
+        this.loginName = loginName;
+        this.realName = realName;
+        this.password = password;
+    }
+}
@@ -0,0 +1,22 @@
+package src.Common;
+
+import java.io.Serializable;
+
+/**
+ * Class to represent one user to be deleted by a deleteMany call
+ */
+public class DeleteRequest implements Serializable {
+    public String loginName;
+    public String password;
+
+    /**
+     * constructor for a delete request
+     *
+     * @param loginName loginName of the user to delete
+     * @param password  password for the user
+     */
+    public DeleteRequest(String loginName, String password) {
+        this.loginName = loginName;
+        this.password = password;
+    }
+}
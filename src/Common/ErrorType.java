@@ -11,4 +11,6 @@ public enum ErrorType {
     NAME_COLLISION, // input name is already taken
     INCORRECT_PASSWORD, // input password doesn't match what we have stored
     MALFORMED_INPUT, // input does not take the form it should
+    NOT_COORDINATOR, // writes must go to the coordinator; responseText holds its address if known
+    STALE_REPLICA, // replica is too far behind for the requested read; responseText holds the coordinator's address
 }
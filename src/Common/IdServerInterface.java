@@ -2,10 +2,13 @@ package src.Common;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 /**
  * IdServer interface. Contains create, lookup, reverseLookup, modify,
- * delete, and get methods headers.
+ * delete, and get methods headers, plus batch variants of create, lookup,
+ * reverseLookup and delete. Reads may also be sent to replicas along with
+ * a ReadConsistency saying how up to date the answer must be.
  *
  * @author Anna Rift
  */
@@ -34,6 +37,17 @@ public interface IdServerInterface extends Remote {
      */
     ServerResponse lookup(String loginName) throws RemoteException;
 
+    /**
+     * Same as lookup, but may be answered by a replica. The replica waits briefly
+     * to meet consistency, and otherwise returns STALE_REPLICA.
+     *
+     * @param loginName   loginName of desired user
+     * @param consistency how up to date the answering server must be
+     * @return Appropriate ServerResponse
+     * @throws RemoteException connection failed during lookup
+     */
+    ServerResponse lookup(String loginName, ReadConsistency consistency) throws RemoteException;
+
     /**
      * Checks for user within loginData. If user exists, returns user info.
      * If user does not exist, returns an error message. Finds user by uuid.
@@ -44,6 +58,17 @@ public interface IdServerInterface extends Remote {
      */
     ServerResponse reverseLookup(String uuidString) throws RemoteException;
 
+    /**
+     * Same as reverseLookup, but may be answered by a replica. The replica waits
+     * briefly to meet consistency, and otherwise returns STALE_REPLICA.
+     *
+     * @param uuidString  uuid of desired user
+     * @param consistency how up to date the answering server must be
+     * @return Appropriate ServerResponse
+     * @throws RemoteException connection failed during reverseLookup
+     */
+    ServerResponse reverseLookup(String uuidString, ReadConsistency consistency) throws RemoteException;
+
     /**
      * Attempts to change the loginName of a user. Returns an appropriate
      * error message on failure, or a confirmation message on success.
@@ -69,7 +94,8 @@ public interface IdServerInterface extends Remote {
 
     /**
      * Retrieves all usernames, uuids, or both from loginData.
-     * Returns resulting ServerResponse.
+     * Returns resulting ServerResponse. The whole result is built and sent at
+     * once, so getPage should be preferred for anything but small databases.
      *
      * @param whatToGet tells function what information to retrieve. must be: 'uuid', 'user', or 'all'
      * @return Appropriate ServerResponse
@@ -77,6 +103,82 @@ public interface IdServerInterface extends Remote {
      */
     ServerResponse get(String whatToGet) throws RemoteException;
 
+    /**
+     * Retrieves one page of usernames, uuids, or both from loginData, ordered by
+     * loginName. Pass the returned nextCursor back in to get the following page.
+     *
+     * @param whatToGet tells function what information to retrieve. must be: 'uuids', 'users', or 'all'
+     * @param cursor    nextCursor from the previous page, or null to start from the beginning
+     * @param pageSize  maximum number of entries to return (the server may cap this further)
+     * @return PageResponse with this page's entries and the cursor for the next one
+     * @throws RemoteException connection failed during getPage
+     */
+    PageResponse getPage(String whatToGet, String cursor, int pageSize) throws RemoteException;
+
+    /**
+     * Same as getPage, but may be answered by a replica. The replica waits briefly
+     * to meet consistency, and otherwise returns STALE_REPLICA.
+     *
+     * @param whatToGet   tells function what information to retrieve. must be: 'uuids', 'users', or 'all'
+     * @param cursor      nextCursor from the previous page, or null to start from the beginning
+     * @param pageSize    maximum number of entries to return (the server may cap this further)
+     * @param consistency how up to date the answering server must be
+     * @return PageResponse with this page's entries and the cursor for the next one
+     * @throws RemoteException connection failed during getPage
+     */
+    PageResponse getPage(String whatToGet, String cursor, int pageSize, ReadConsistency consistency) throws RemoteException;
+
+    /**
+     * Finds loginNames that start with or contain the given text, ordered by
+     * loginName. Pass the returned nextCursor back in to get the following page.
+     *
+     * @param searchType how to match loginNames. must be: 'prefix' or 'substring'
+     * @param pattern    text to match (must not be empty, and at least 3 characters for 'substring')
+     * @param cursor     nextCursor from the previous page, or null to start from the beginning
+     * @param limit      maximum number of loginNames to return (the server may cap this further)
+     * @return PageResponse with matching loginNames and the cursor for the next page
+     * @throws RemoteException connection failed during search
+     */
+    PageResponse search(String searchType, String pattern, String cursor, int limit) throws RemoteException;
+
+    /**
+     * Creates several users in one call. The batch is applied and replicated as
+     * a single unit; each request still succeeds or fails on its own.
+     *
+     * @param requests loginName, realName and password of each user to create
+     * @return ServerResponse for each request, in order, as create would return
+     * @throws RemoteException connection failed during createMany
+     */
+    List<ServerResponse> createMany(List<CreateRequest> requests) throws RemoteException;
+
+    /**
+     * Looks up several users by loginName in one call.
+     *
+     * @param loginNames loginNames of desired users
+     * @return ServerResponse for each loginName, in order, as lookup would return
+     * @throws RemoteException connection failed during lookupMany
+     */
+    List<ServerResponse> lookupMany(List<String> loginNames) throws RemoteException;
+
+    /**
+     * Looks up several users by uuid in one call.
+     *
+     * @param uuidStrings uuids of desired users
+     * @return ServerResponse for each uuid, in order, as reverseLookup would return
+     * @throws RemoteException connection failed during reverseLookupMany
+     */
+    List<ServerResponse> reverseLookupMany(List<String> uuidStrings) throws RemoteException;
+
+    /**
+     * Deletes several users in one call. The batch is applied and replicated as
+     * a single unit; each request still succeeds or fails on its own.
+     *
+     * @param requests loginName and password of each user to delete
+     * @return ServerResponse for each request, in order, as delete would return
+     * @throws RemoteException connection failed during deleteMany
+     */
+    List<ServerResponse> deleteMany(List<DeleteRequest> requests) throws RemoteException;
+
     /**
      * Retrieves the coordinator's address.
      * Returns current coordinator's address.
@@ -85,4 +187,14 @@ public interface IdServerInterface extends Remote {
      * @throws RemoteException
      */
     ServerResponse getCoordinator() throws RemoteException;
+
+    /**
+     * Retrieves the coordinator's address, waiting up to timeoutMillis for an
+     * election to finish if there is none. Returns as soon as one is known.
+     *
+     * @param timeoutMillis longest to wait, or 0 to wait indefinitely
+     * @return ServerResponse containing the coordinator's address, or null text if none was known in time
+     * @throws RemoteException connection failed during getCoordinator
+     */
+    ServerResponse getCoordinator(long timeoutMillis) throws RemoteException;
 }
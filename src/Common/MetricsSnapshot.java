@@ -0,0 +1,75 @@
+package src.Common;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Metrics of one server at one moment, as returned by AdminInterface.getMetrics.
+ * Latencies are in microseconds, and percentiles are accurate to within about 1/8.
+ */
+public class MetricsSnapshot implements Serializable {
+    public final String serverName;
+    public final long takenAtMillis;
+    // latency distribution of each timed operation, by name
+    public final SortedMap<String, Latency> latencies;
+    // every counter and gauge, by name
+    public final SortedMap<String, Long> values;
+
+    public MetricsSnapshot(String serverName, long takenAtMillis, Map<String, Latency> latencies, Map<String, Long> values) {
+        this.serverName = serverName;
+        this.takenAtMillis = takenAtMillis;
+        this.latencies = new TreeMap<>(latencies);
+        this.values = new TreeMap<>(values);
+    }
+
+    /**
+     * Latency distribution of one operation
+     */
+    public static class Latency implements Serializable {
+        public final long count;
+        public final long meanMicros;
+        public final long p50Micros;
+        public final long p99Micros;
+        public final long p999Micros;
+        public final long maxMicros;
+
+        public Latency(long count, long meanMicros, long p50Micros, long p99Micros, long p999Micros, long maxMicros) {
+            this.count = count;
+            this.meanMicros = meanMicros;
+            this.p50Micros = p50Micros;
+            this.p99Micros = p99Micros;
+            this.p999Micros = p999Micros;
+            this.maxMicros = maxMicros;
+        }
+    }
+
+    /**
+     * Formats the snapshot as a table of latencies followed by every counter and gauge
+     * that is not zero.
+     *
+     * @return human-readable dump
+     */
+    @Override
+    public String toString() {
+        StringBuilder dump = new StringBuilder();
+        dump.append("Metrics for ").append(serverName).append(" at ").append(new Date(takenAtMillis)).append('\n');
+        dump.append(String.format("%-32s %10s %10s %10s %10s %10s %10s%n", "latency (us)", "count", "mean", "p50", "p99", "p999", "max"));
+        for (Map.Entry<String, Latency> entry : latencies.entrySet()) {
+            Latency latency = entry.getValue();
+            if (latency.count == 0) {
+                continue;
+            }
+            dump.append(String.format("%-32s %10d %10d %10d %10d %10d %10d%n", entry.getKey(), latency.count,
+                    latency.meanMicros, latency.p50Micros, latency.p99Micros, latency.p999Micros, latency.maxMicros));
+        }
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            if (entry.getValue() != 0) {
+                dump.append(String.format("%-32s %10d%n", entry.getKey(), entry.getValue()));
+            }
+        }
+        return dump.toString();
+    }
+}
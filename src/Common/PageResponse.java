@@ -0,0 +1,45 @@
+package src.Common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class to represent one page of a paginated listing passed by server
+ */
+public class PageResponse extends ServerResponse {
+    public List<String> items;
+    // cursor to request the following page with, or null if this is the last page
+    public String nextCursor;
+
+    /**
+     * constructor for error type response
+     *
+     * @param error error that is to be communicated
+     */
+    public PageResponse(ErrorType error) {
+        super(error);
+        this.items = new ArrayList<>();
+        this.nextCursor = null;
+    }
+
+    /**
+     * constructor for a page of results
+     *
+     * @param items      entries on this page
+     * @param nextCursor cursor for the following page, or null if there is none
+     */
+    public PageResponse(List<String> items, String nextCursor) {
+        super("");
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * returns whether another page follows this one
+     *
+     * @return true if nextCursor can be used to fetch more entries
+     */
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,66 @@
+package src.Common;
+
+import java.io.Serializable;
+
+/**
+ * Class to represent how up to date a server must be to answer a read. Replicas
+ * that cannot meet it in time answer with STALE_REPLICA instead; the coordinator
+ * always meets it.
+ */
+public class ReadConsistency implements Serializable {
+    // latest action the server must have applied, or -1 for any
+    public final long minTimestamp;
+    // longest the server may have gone without confirming it is up to date with the coordinator, or -1 for any
+    public final long maxStalenessMillis;
+
+    /**
+     * constructor for a read consistency requirement
+     *
+     * @param minTimestamp       timestamp of an action the server must have applied, or -1 for any
+     * @param maxStalenessMillis how out of date the server may be, in milliseconds, or -1 for any
+     */
+    public ReadConsistency(long minTimestamp, long maxStalenessMillis) {
+        this.minTimestamp = minTimestamp;
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+
+    /**
+     * @return a requirement any server meets
+     */
+    public static ReadConsistency any() {
+        return new ReadConsistency(-1, -1);
+    }
+
+    /**
+     * requirement for reading one's own writes: pass the timestamp returned with the write
+     *
+     * @param timestamp timestamp of an action the server must have applied
+     * @return the requirement
+     */
+    public static ReadConsistency atLeast(long timestamp) {
+        return new ReadConsistency(timestamp, -1);
+    }
+
+    /**
+     * @param millis how out of date the server may be, in milliseconds
+     * @return the requirement
+     */
+    public static ReadConsistency maxStaleness(long millis) {
+        return new ReadConsistency(-1, millis);
+    }
+
+    /**
+     * returns this requirement, also demanding that the server has applied the given action
+     *
+     * @param timestamp timestamp of an action the server must have applied
+     * @return the combined requirement
+     */
+    public ReadConsistency withMinTimestamp(long timestamp) {
+        return new ReadConsistency(Math.max(minTimestamp, timestamp), maxStalenessMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "at least @" + minTimestamp + ", at most " + maxStalenessMillis + " ms stale";
+    }
+}
@@ -10,6 +10,8 @@ import java.io.Serializable;
 public class ServerResponse implements Serializable {
     public String responseText;
     public ErrorType error;
+    // latest action the answering server had applied, or for a write the action's own timestamp (-1 if unknown)
+    public long timestamp = -1;
 
     /**
      * constructor for error type response
@@ -1,52 +1,197 @@
 package src.Server;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
+/**
+ * Recent actions applied by the coordinator, in timestamp order, so replicas that fall
+ * behind can catch up without pulling the whole database. Stored as a ring buffer of
+ * timestamps and actions; the oldest actions are evicted once their estimated size
+ * passes the byte budget.
+ */
 public class ActionLog {
-    private Map<Integer, ActionObject> log = new HashMap<>();
-    private int capacity;
+    private static final int INITIAL_SLOTS = 1024;
+    // rough per-action cost of the object headers and references around its strings
+    private static final int ACTION_OVERHEAD_BYTES = 64;
 
-    public ActionLog(int capacity) {
-        this.capacity = capacity;
+    private final long capacityBytes;
+    private long[] timestamps = new long[INITIAL_SLOTS];
+    private ActionObject[] actions = new ActionObject[INITIAL_SLOTS];
+    private int[] sizes = new int[INITIAL_SLOTS];
+    // index of the oldest action, and number of actions held
+    private int head = 0;
+    private int count = 0;
+    private long totalBytes = 0;
+    // timestamp of the newest action evicted so far, since everything after it is still held
+    private long lastEvictedTimestamp = Long.MIN_VALUE;
+
+    public ActionLog(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
     }
 
-    public void clear() {
-        log.clear();
+    public synchronized void clear() {
+        Arrays.fill(actions, null);
+        head = 0;
+        count = 0;
+        totalBytes = 0;
+        lastEvictedTimestamp = Long.MIN_VALUE;
     }
 
-    public boolean containsTimestamp(int timestamp) {
-        return log.containsKey(timestamp);
+    public synchronized boolean containsTimestamp(long timestamp) {
+        return indexOf(timestamp) >= 0;
     }
 
-    public SortedMap<Integer, ActionObject> getActionsSinceTimestamp(int targetTimestamp) {
-        if (!this.containsTimestamp(targetTimestamp)) {
-            return null;
+    /**
+     * Returns the oldest actions after targetTimestamp, up to maxActions of them, provided the
+     * log still holds every action after targetTimestamp.
+     *
+     * @param targetTimestamp timestamp of the last action the caller has seen
+     * @param maxActions      most actions to return
+     * @return actions keyed by timestamp, or null if some were already evicted
+     */
+    public synchronized SortedMap<Long, ActionObject> getActionsSinceTimestamp(long targetTimestamp, int maxActions) {
+        int start;
+        if (targetTimestamp == lastEvictedTimestamp) {
+            start = 0;
+        } else {
+            int found = indexOf(targetTimestamp);
+            if (found < 0) {
+                return null;
+            }
+            start = found + 1;
         }
 
-        SortedMap<Integer, ActionObject> actions = new TreeMap<>();
-        for (int timestamp : log.keySet()) {
-            if (timestamp > targetTimestamp) {
-                actions.put(timestamp, log.get(timestamp));
-            }
+        SortedMap<Long, ActionObject> result = new TreeMap<>();
+        int end = (int) Math.min(count, (long) start + maxActions);
+        for (int i = start; i < end; i++) {
+            int slot = slot(i);
+            result.put(timestamps[slot], actions[slot]);
         }
-        return actions;
+        return result;
     }
 
-    public void appendAction(int timestamp, ActionObject actionObject) {
-        if (log.size() >= capacity) {
+    /**
+     * Adds an action, which must have a later timestamp than every action already held,
+     * then evicts the oldest actions until the log fits its byte budget again.
+     *
+     * @param timestamp    timestamp of action
+     * @param actionObject action to add
+     */
+    public synchronized void appendAction(long timestamp, ActionObject actionObject) {
+        if (count == timestamps.length) {
+            grow();
+        }
+        int slot = slot(count);
+        int size = estimateBytes(actionObject);
+        timestamps[slot] = timestamp;
+        actions[slot] = actionObject;
+        sizes[slot] = size;
+        count++;
+        totalBytes += size;
+
+        // always keep the newest action, however large
+        while (totalBytes > capacityBytes && count > 1) {
             removeOldest();
         }
-        log.put(timestamp, actionObject);
+    }
+
+    /**
+     * @return timestamp of the newest action held, or Long.MIN_VALUE if the log is empty
+     */
+    public synchronized long getLatestTimestamp() {
+        return (count == 0) ? Long.MIN_VALUE : timestamps[slot(count - 1)];
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public synchronized long sizeInBytes() {
+        return totalBytes;
     }
 
     private void removeOldest() {
-        int leastTimestamp = Integer.MAX_VALUE;
-        for (int timestamp : log.keySet()) {
-            leastTimestamp = Math.min(leastTimestamp, timestamp);
+        lastEvictedTimestamp = timestamps[head];
+        totalBytes -= sizes[head];
+        actions[head] = null;
+        head = (head + 1) % timestamps.length;
+        count--;
+    }
+
+    /**
+     * Doubles the ring, moving the oldest action to index 0.
+     */
+    private void grow() {
+        int newLength = timestamps.length * 2;
+        long[] newTimestamps = new long[newLength];
+        ActionObject[] newActions = new ActionObject[newLength];
+        int[] newSizes = new int[newLength];
+        for (int i = 0; i < count; i++) {
+            int slot = slot(i);
+            newTimestamps[i] = timestamps[slot];
+            newActions[i] = actions[slot];
+            newSizes[i] = sizes[slot];
+        }
+        timestamps = newTimestamps;
+        actions = newActions;
+        sizes = newSizes;
+        head = 0;
+    }
+
+    /**
+     * Binary searches the held actions for a timestamp.
+     *
+     * @param timestamp timestamp to find
+     * @return position of the action counting from the oldest, or -1 if it is not held
+     */
+    private int indexOf(long timestamp) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midTimestamp = timestamps[slot(mid)];
+            if (midTimestamp < timestamp) {
+                low = mid + 1;
+            } else if (midTimestamp > timestamp) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int slot(int position) {
+        return (head + position) % timestamps.length;
+    }
+
+    /**
+     * Estimates how much memory an action holds on to, counting two bytes per character.
+     *
+     * @param action action to measure
+     * @return approximate size in bytes
+     */
+    private static int estimateBytes(ActionObject action) {
+        int bytes = ACTION_OVERHEAD_BYTES + 2 * (length(action.loginName) + length(action.password) + length(action.data));
+        bytes += estimateBytes(action.createdInfo);
+        bytes += estimateBytes(action.modifiedInfo);
+        if (action.batch != null) {
+            for (ActionObject batchedAction : action.batch) {
+                bytes += estimateBytes(batchedAction);
+            }
         }
-        log.remove(leastTimestamp);
+        return bytes;
+    }
+
+    private static int estimateBytes(LoginInfo info) {
+        if (info == null) {
+            return 0;
+        }
+        return ACTION_OVERHEAD_BYTES + 2 * (length(info.loginName) + length(info.realName) + length(info.password) + length(info.creatorIpAddr));
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
     }
 }
@@ -1,12 +1,17 @@
 package src.Server;
 
 import java.io.Serializable;
+import java.util.List;
 
 public class ActionObject implements Serializable {
+    // fixed so that adding fields does not invalidate logged actions
+    private static final long serialVersionUID = 6999984150489647904L;
+
     public enum ActionKind {
         CREATE,
         MODIFY,
-        DELETE
+        DELETE,
+        BATCH
     }
 
     public ActionObject(ActionKind kind, String loginName, String password, String data) {
@@ -14,6 +19,12 @@ public class ActionObject implements Serializable {
         this.loginName = loginName;
         this.password = password;
         this.data = data;
+        this.batch = null;
+    }
+
+    public ActionObject(List<ActionObject> batch) {
+        this.kind = ActionKind.BATCH;
+        this.batch = batch;
     }
 
     public ActionKind kind;
@@ -21,4 +32,17 @@ public class ActionObject implements Serializable {
     public String loginName;
     public String password;
     public String data;
+    // actions making up a BATCH, in the order they were applied
+    public List<ActionObject> batch;
+    // record produced by a CREATE the first time it was performed, so replaying it gives the same user
+    public LoginInfo createdInfo;
+    // record left by a MODIFY the first time it was performed, so a replica can set it directly when catching up
+    public LoginInfo modifiedInfo;
+    // logical timestamp the coordinator gave this action, or 0 before it has one
+    public long timestamp;
+    // address of the client that asked for a CREATE, read on the RMI thread that received it; its createdInfo
+    // carries it from then on
+    public transient String clientIpAddr;
+    // sequence number of this action's write-ahead log record once it has been logged, or 0 before
+    public transient long logSequence;
 }
@@ -0,0 +1,200 @@
+package src.Server;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs microbenchmarks the way JMH does in average-time mode, without needing JMH on the
+ * classpath: each benchmark is warmed up, then measured over several iterations, and its
+ * score is reported as the mean time per operation with a 99.9% confidence interval across
+ * iterations. Results print as JMH's text table and can also be written in JMH's CSV format,
+ * so runs can be compared with the same tools. Every operation returns a value that is folded
+ * into a sink, so the JIT cannot drop work whose result is unused.
+ */
+public class BenchmarkRunner {
+    // Student's t for a two-sided 99.9% interval, by degrees of freedom 1 to 10
+    private static final double[] T_999 = {636.62, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587};
+    private static final double T_999_LARGE = 3.291;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final List<Result> results = new ArrayList<>();
+    // folds in every operation's result, so none of them can be optimized away
+    private long sink = 0;
+
+    /**
+     * @param warmupIterations      iterations run before measuring, to let the JIT settle
+     * @param measurementIterations iterations measured and reported
+     */
+    public BenchmarkRunner(int warmupIterations, int measurementIterations) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+    }
+
+    /**
+     * Runs one benchmark and prints its result line.
+     *
+     * @param name            name of the benchmark
+     * @param param           value of its parameter, such as a table size, or "" if none
+     * @param opsPerIteration operations timed in each iteration
+     * @param setup           run untimed before each iteration, to prepare state the operations consume
+     * @param op              the operation, given its index within the iteration
+     */
+    public void run(String name, String param, int opsPerIteration, Setup setup, Op op) throws Exception {
+        double[] microsPerOp = new double[measurementIterations];
+        for (int iteration = 0; iteration < warmupIterations + measurementIterations; iteration++) {
+            setup.run(iteration);
+            long start = System.nanoTime();
+            for (int i = 0; i < opsPerIteration; i++) {
+                sink += op.run(i);
+            }
+            long nanos = System.nanoTime() - start;
+            if (iteration >= warmupIterations) {
+                microsPerOp[iteration - warmupIterations] = nanos / 1000.0 / opsPerIteration;
+            }
+        }
+        report(new Result(name, param, 1, microsPerOp));
+    }
+
+    /**
+     * Runs one benchmark with its operations split across several threads, and prints its result
+     * line. The score is wall-clock time per operation, so the inverse of total throughput.
+     *
+     * @param name            name of the benchmark
+     * @param param           value of its parameter, or "" if none
+     * @param threads         threads running operations at once
+     * @param opsPerIteration operations timed in each iteration, across all threads
+     * @param setup           run untimed before each iteration
+     * @param op              the operation, given its index within the iteration; must be safe to run concurrently
+     */
+    public void runConcurrent(String name, String param, int threads, int opsPerIteration, Setup setup, Op op) throws Exception {
+        double[] microsPerOp = new double[measurementIterations];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int iteration = 0; iteration < warmupIterations + measurementIterations; iteration++) {
+                setup.run(iteration);
+                List<Future<Long>> workers = new ArrayList<>(threads);
+                long start = System.nanoTime();
+                for (int thread = 0; thread < threads; thread++) {
+                    int first = thread;
+                    workers.add(pool.submit(() -> {
+                        long threadSink = 0;
+                        for (int i = first; i < opsPerIteration; i += threads) {
+                            threadSink += op.run(i);
+                        }
+                        return threadSink;
+                    }));
+                }
+                for (Future<Long> worker : workers) {
+                    sink += worker.get();
+                }
+                long nanos = System.nanoTime() - start;
+                if (iteration >= warmupIterations) {
+                    microsPerOp[iteration - warmupIterations] = nanos / 1000.0 / opsPerIteration;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        report(new Result(name, param, threads, microsPerOp));
+    }
+
+    private void report(Result result) {
+        if (results.isEmpty()) {
+            System.out.println(String.format("%-40s %10s  %4s  %3s  %12s   %10s  %5s", "Benchmark", "(param)", "Mode", "Cnt", "Score", "Error", "Units"));
+        }
+        results.add(result);
+        System.out.println(result);
+    }
+
+    /**
+     * Writes every result so far in JMH's CSV format.
+     *
+     * @param path file to write
+     * @throws IOException the file could not be written
+     */
+    public void writeCsv(Path path) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(path))) {
+            out.println("\"Benchmark\",\"Mode\",\"Threads\",\"Samples\",\"Score\",\"Score Error (99.9%)\",\"Unit\",\"Param: param\"");
+            for (Result result : results) {
+                out.printf("\"%s\",\"avgt\",%d,%d,%f,%f,\"us/op\",%s%n",
+                        result.name, result.threads, result.microsPerOp.length, result.score(), result.error(), result.param);
+            }
+        }
+        // read the sink so it stays live to the end of the run
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * preparation run before each iteration
+     */
+    public interface Setup {
+        void run(int iteration) throws Exception;
+
+        Setup NONE = iteration -> {
+        };
+    }
+
+    /**
+     * one benchmarked operation, returning something derived from its result
+     */
+    public interface Op {
+        long run(int i) throws Exception;
+    }
+
+    /**
+     * measured iterations of one benchmark
+     */
+    private static class Result {
+        final String name;
+        final String param;
+        final int threads;
+        final double[] microsPerOp;
+
+        Result(String name, String param, int threads, double[] microsPerOp) {
+            this.name = name;
+            this.param = param;
+            this.threads = threads;
+            this.microsPerOp = microsPerOp;
+        }
+
+        double score() {
+            double total = 0;
+            for (double value : microsPerOp) {
+                total += value;
+            }
+            return total / microsPerOp.length;
+        }
+
+        /**
+         * @return half-width of the 99.9% confidence interval of the score
+         */
+        double error() {
+            int n = microsPerOp.length;
+            if (n < 2) {
+                return Double.NaN;
+            }
+            double mean = score();
+            double squares = 0;
+            for (double value : microsPerOp) {
+                squares += (value - mean) * (value - mean);
+            }
+            double t = (n - 1 <= T_999.length) ? T_999[n - 2] : T_999_LARGE;
+            return t * Math.sqrt(squares / (n - 1)) / Math.sqrt(n);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-40s %10s  avgt  %3d  %12.3f \u00B1 %10.3f  us/op", name, param, microsPerOp.length, score(), error());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package src.Server;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * LoginStore keeping every record as an object on the heap, in a ConcurrentHashMap keyed by
+ * loginName with a second map from UUID to the same records. Persisted through snapshots.
+ */
+public class HeapLoginStore implements LoginStore {
+    private volatile ConcurrentHashMap<String, LoginInfo> records;
+    private volatile ConcurrentHashMap<UUID, LoginInfo> uuidIndex;
+
+    public HeapLoginStore() {
+        this.records = new ConcurrentHashMap<>();
+        this.uuidIndex = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public LoginInfo get(String loginName) {
+        return records.get(loginName);
+    }
+
+    @Override
+    public LoginInfo getByUuid(UUID uuid) {
+        return uuidIndex.get(uuid);
+    }
+
+    @Override
+    public boolean containsKey(String loginName) {
+        return records.containsKey(loginName);
+    }
+
+    @Override
+    public void put(LoginInfo info) {
+        LoginInfo previous = records.put(info.loginName, info);
+        if (previous != null && !previous.uuid.equals(info.uuid)) {
+            uuidIndex.remove(previous.uuid, previous);
+        }
+        uuidIndex.put(info.uuid, info);
+    }
+
+    @Override
+    public boolean putIfAbsent(LoginInfo info) {
+        if (records.putIfAbsent(info.loginName, info) != null) {
+            return false;
+        }
+        uuidIndex.put(info.uuid, info);
+        return true;
+    }
+
+    @Override
+    public void rename(String oldLoginName, String newLoginName) {
+        LoginInfo info = records.get(oldLoginName);
+        if (info == null) {
+            return;
+        }
+        // rename a copy, so readers holding the old record never see it change underneath them
+        LoginInfo renamed = new LoginInfo(info);
+        renamed.changeLoginName(newLoginName);
+        records.put(newLoginName, renamed);
+        uuidIndex.put(renamed.uuid, renamed);
+        records.remove(oldLoginName, info);
+    }
+
+    @Override
+    public void setChangeStamp(String loginName, long changeStamp) {
+        LoginInfo info = records.get(loginName);
+        if (info != null) {
+            info.changeStamp = changeStamp;
+        }
+    }
+
+    @Override
+    public LoginInfo remove(String loginName) {
+        LoginInfo info = records.remove(loginName);
+        if (info != null) {
+            uuidIndex.remove(info.uuid);
+        }
+        return info;
+    }
+
+    @Override
+    public int size() {
+        return records.size();
+    }
+
+    @Override
+    public void forEach(Consumer<LoginInfo> action) {
+        records.values().forEach(action);
+    }
+
+    @Override
+    public void replaceAll(Map<String, LoginInfo> data) {
+        ConcurrentHashMap<String, LoginInfo> newRecords = new ConcurrentHashMap<>(data);
+        ConcurrentHashMap<UUID, LoginInfo> newUuidIndex = new ConcurrentHashMap<>();
+        for (LoginInfo info : newRecords.values()) {
+            newUuidIndex.put(info.uuid, info);
+        }
+        records = newRecords;
+        uuidIndex = newUuidIndex;
+    }
+
+    @Override
+    public Map<String, LoginInfo> asMap() {
+        return records;
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return false;
+    }
+
+    @Override
+    public void flush() {
+    }
+}
@@ -0,0 +1,256 @@
+package src.Server;
+
+import src.Common.ErrorType;
+import src.Common.ServerResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Microbenchmarks of the server's hot paths, run through BenchmarkRunner so every result is
+ * reported the same way and regressions show up as a score outside the previous run's error:
+ * applyAction for each ActionKind, lookup and reverseLookup as the table grows, ActionLog
+ * appends and range reads, saveData and loadData, and the serialization RMI does for
+ * ServerResponse and SyncInfo. The server ones run against a real IdServer started in this
+ * process as a coordinator without replicas, with the default fsync policy. applyAction only
+ * queues its write-ahead log record, so its numbers cover the server's own work; submitWrite
+ * is the whole path a client write takes, from many threads at once, including waiting for
+ * the record to be durable, so it shows whether concurrent writes share their fsyncs.
+ *
+ * Like a test run, the server keeps its state in src/resources, so anything saved there is replaced.
+ *
+ * Usage: $ java src.Server.HotPathBenchmark [maxUsers] [port] [resultsCsv]
+ */
+public class HotPathBenchmark {
+    private static final int DEFAULT_MAX_USERS = 100_000;
+    private static final int DEFAULT_PORT = 5191;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final int[] TABLE_SIZES = {1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+    private static final int WRITE_OPS = 10_000;
+    private static final int BATCH_SIZE = 16;
+    private static final int CLIENT_THREADS = 32;
+    private static final int CLIENT_WRITE_OPS = 2_000;
+    private static final int LOOKUP_OPS = 100_000;
+    private static final int ACTION_LOG_ACTIONS = 100_000;
+    private static final int[] RANGE_LENGTHS = {100, 10_000};
+    private static final int[] SYNC_INFO_ACTIONS = {64, 1024};
+    private static final long COORDINATOR_WAIT = 10 * 1000;
+    private static final String PASSWORD = "password";
+
+    private static IdServer server;
+
+    public static void main(String[] args) throws Exception {
+        int maxUsers = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MAX_USERS;
+        IdServer.portNumber = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        String csvPath = args.length > 2 ? args[2] : null;
+
+        IdServer.myHostname = InetAddress.getLocalHost();
+        server = new IdServer(Collections.emptyList());
+        long deadline = System.currentTimeMillis() + COORDINATOR_WAIT;
+        while (!server.isCoordinator && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        if (!server.isCoordinator) {
+            throw new IllegalStateException("Benchmark server did not become coordinator");
+        }
+
+        BenchmarkRunner runner = new BenchmarkRunner(WARMUP_ITERATIONS, MEASUREMENT_ITERATIONS);
+        benchmarkApplyAction(runner);
+        benchmarkLookups(runner, maxUsers);
+        benchmarkActionLog(runner);
+        benchmarkSerialization(runner);
+
+        if (csvPath != null) {
+            runner.writeCsv(Paths.get(csvPath));
+            System.out.println("Results written to " + csvPath);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Times applyAction for each ActionKind, preparing the users each iteration works on beforehand.
+     */
+    private static void benchmarkApplyAction(BenchmarkRunner runner) throws Exception {
+        runner.run("applyAction.CREATE", "", WRITE_OPS,
+                iteration -> deleteAll("create", WRITE_OPS),
+                i -> apply(create("create" + i)));
+        deleteAll("create", WRITE_OPS);
+
+        runner.run("applyAction.MODIFY", "", WRITE_OPS,
+                iteration -> {
+                    deleteAll("modified", WRITE_OPS);
+                    deleteAll("modify", WRITE_OPS);
+                    createAll("modify", WRITE_OPS);
+                },
+                i -> apply(new ActionObject(ActionObject.ActionKind.MODIFY, "modify" + i, PASSWORD, "modified" + i)));
+        deleteAll("modified", WRITE_OPS);
+
+        runner.run("applyAction.DELETE", "", WRITE_OPS,
+                iteration -> createAll("delete", WRITE_OPS),
+                i -> apply(new ActionObject(ActionObject.ActionKind.DELETE, "delete" + i, PASSWORD, null)));
+
+        runner.run("applyAction.BATCH", String.valueOf(BATCH_SIZE), WRITE_OPS / BATCH_SIZE,
+                iteration -> deleteAll("batch", WRITE_OPS),
+                i -> {
+                    List<ActionObject> creates = new ArrayList<>(BATCH_SIZE);
+                    for (int j = 0; j < BATCH_SIZE; j++) {
+                        creates.add(create("batch" + (i * BATCH_SIZE + j)));
+                    }
+                    return apply(new ActionObject(creates));
+                });
+        deleteAll("batch", WRITE_OPS);
+
+        runner.runConcurrent("submitWrite.CREATE", String.valueOf(CLIENT_THREADS), CLIENT_THREADS, CLIENT_WRITE_OPS,
+                iteration -> deleteAll("client", CLIENT_WRITE_OPS),
+                i -> {
+                    ActionObject action = create("client" + i);
+                    ServerResponse response = server.submitWrite(action);
+                    if (response.error != ErrorType.NONE) {
+                        throw new IllegalStateException("CREATE of " + action.loginName + " failed with " + response.error);
+                    }
+                    return response.timestamp;
+                });
+        deleteAll("client", CLIENT_WRITE_OPS);
+    }
+
+    /**
+     * Grows the table through each size up to maxUsers, timing lookups and reverse lookups of
+     * random users at each, then times saving and loading the largest table.
+     */
+    private static void benchmarkLookups(BenchmarkRunner runner, int maxUsers) throws Exception {
+        List<String> uuidStrings = new ArrayList<>();
+        Random random = new Random(455);
+        int[] targets = new int[LOOKUP_OPS];
+        for (int size : TABLE_SIZES) {
+            if (size > maxUsers) {
+                break;
+            }
+            for (int i = uuidStrings.size(); i < size; i++) {
+                ServerResponse response = server.applyAction(create("user" + i));
+                uuidStrings.add(response.responseText);
+            }
+            for (int i = 0; i < LOOKUP_OPS; i++) {
+                targets[i] = random.nextInt(size);
+            }
+            String param = String.valueOf(size);
+            runner.run("lookup", param, LOOKUP_OPS, BenchmarkRunner.Setup.NONE,
+                    i -> found(server.lookup("user" + targets[i])));
+            runner.run("reverseLookup", param, LOOKUP_OPS, BenchmarkRunner.Setup.NONE,
+                    i -> found(server.reverseLookup(uuidStrings.get(targets[i]))));
+        }
+
+        String param = String.valueOf(uuidStrings.size());
+        runner.run("saveData", param, 1,
+                iteration -> server.fullSnapshotNeeded = true,
+                i -> {
+                    server.saveData();
+                    return server.lastSnapshotBytes;
+                });
+        runner.run("loadData", param, 1, BenchmarkRunner.Setup.NONE,
+                i -> {
+                    server.loadData();
+                    return server.loginData.size();
+                });
+    }
+
+    /**
+     * Times appending to an ActionLog, and reading the most recent actions back from a full one.
+     */
+    private static void benchmarkActionLog(BenchmarkRunner runner) throws Exception {
+        ActionObject[] actions = new ActionObject[ACTION_LOG_ACTIONS];
+        for (int i = 0; i < ACTION_LOG_ACTIONS; i++) {
+            actions[i] = create("user" + i);
+        }
+        ActionLog actionLog = new ActionLog(IdServer.ACTION_LOG_BYTES);
+        runner.run("ActionLog.appendAction", "", ACTION_LOG_ACTIONS,
+                iteration -> actionLog.clear(),
+                i -> {
+                    actionLog.appendAction(i + 1, actions[i]);
+                    return i;
+                });
+
+        for (int length : RANGE_LENGTHS) {
+            long since = ACTION_LOG_ACTIONS - length;
+            runner.run("ActionLog.getActionsSinceTimestamp", String.valueOf(length), 1000, BenchmarkRunner.Setup.NONE,
+                    i -> actionLog.getActionsSinceTimestamp(since, length).size());
+        }
+    }
+
+    /**
+     * Times writing and reading back the objects RMI sends most, as RMI marshals them.
+     */
+    private static void benchmarkSerialization(BenchmarkRunner runner) throws Exception {
+        ServerResponse lookupResponse = server.lookup("user0");
+        runner.run("serialize.ServerResponse", "", LOOKUP_OPS, BenchmarkRunner.Setup.NONE,
+                i -> roundTrip(lookupResponse));
+
+        for (int numActions : SYNC_INFO_ACTIONS) {
+            SortedMap<Long, ActionObject> recentActions = new TreeMap<>();
+            for (int i = 0; i < numActions; i++) {
+                recentActions.put((long) i + 1, create("user" + i));
+            }
+            SyncInfo syncInfo = new SyncInfo(recentActions, false);
+            runner.run("serialize.SyncInfo", String.valueOf(numActions), 100_000 / numActions, BenchmarkRunner.Setup.NONE,
+                    i -> roundTrip(syncInfo));
+        }
+    }
+
+    private static ActionObject create(String loginName) {
+        ActionObject action = new ActionObject(ActionObject.ActionKind.CREATE, loginName, PASSWORD, "Benchmark User");
+        action.clientIpAddr = "127.0.0.1";
+        return action;
+    }
+
+    private static long apply(ActionObject action) {
+        ServerResponse response = server.applyAction(action);
+        if (response.error != ErrorType.NONE) {
+            throw new IllegalStateException(action.kind + " of " + action.loginName + " failed with " + response.error);
+        }
+        return response.timestamp;
+    }
+
+    private static long found(ServerResponse response) {
+        if (response.error != ErrorType.NONE) {
+            throw new IllegalStateException("Lookup failed with " + response.error);
+        }
+        return response.responseText.length();
+    }
+
+    private static void createAll(String prefix, int count) {
+        for (int i = 0; i < count; i++) {
+            server.applyAction(create(prefix + i));
+        }
+    }
+
+    private static void deleteAll(String prefix, int count) {
+        for (int i = 0; i < count; i++) {
+            server.applyAction(new ActionObject(ActionObject.ActionKind.DELETE, prefix + i, PASSWORD, null));
+        }
+    }
+
+    /**
+     * @return size of the serialized form, after reading it back
+     */
+    private static long roundTrip(Object object) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            in.readObject();
+        }
+        return bytes.size();
+    }
+}
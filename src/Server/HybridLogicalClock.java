@@ -0,0 +1,54 @@
+package src.Server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hybrid logical clock: a 64-bit timestamp whose high bits are wall-clock milliseconds and
+ * whose low LOGICAL_BITS count events within one millisecond. It orders events like a Lamport
+ * clock, always moving past every timestamp it has seen, but stays close to real time, so the
+ * physical part of a timestamp says roughly when it was made. The state is one AtomicLong
+ * updated by compare-and-set, so threads reading or advancing it never block each other.
+ * If more than 2^LOGICAL_BITS events land in one millisecond the counter carries into the
+ * milliseconds, which only runs the clock slightly ahead of real time.
+ */
+public class HybridLogicalClock {
+    public static final int LOGICAL_BITS = 16;
+
+    private final AtomicLong current = new AtomicLong();
+
+    /**
+     * @return the latest timestamp handed out or seen
+     */
+    public long getCurrent() {
+        return current.get();
+    }
+
+    /**
+     * Advances the clock for a local event or a message about to be sent.
+     *
+     * @return the event's timestamp, later than every earlier one
+     */
+    public long tick() {
+        long physical = System.currentTimeMillis() << LOGICAL_BITS;
+        return current.updateAndGet(previous -> Math.max(previous + 1, physical));
+    }
+
+    /**
+     * Advances the clock past a timestamp received from another server.
+     *
+     * @param remote timestamp carried by the message
+     * @return the receive event's timestamp, later than both remote and every earlier local one
+     */
+    public long receive(long remote) {
+        long physical = System.currentTimeMillis() << LOGICAL_BITS;
+        return current.updateAndGet(previous -> Math.max(Math.max(previous, remote) + 1, physical));
+    }
+
+    /**
+     * @param timestamp timestamp from a hybrid logical clock
+     * @return the wall-clock milliseconds it was made at
+     */
+    public static long physicalMillisOf(long timestamp) {
+        return timestamp >>> LOGICAL_BITS;
+    }
+}
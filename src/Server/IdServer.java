@@ -1,17 +1,18 @@
 package src.Server;
 
+import src.Common.AdminInterface;
+import src.Common.CreateRequest;
+import src.Common.DeleteRequest;
 import src.Common.ErrorType;
 import src.Common.IdServerInterface;
+import src.Common.MetricsSnapshot;
+import src.Common.PageResponse;
+import src.Common.ReadConsistency;
 import src.Common.ServerResponse;
 
 import javax.rmi.ssl.SslRMIClientSocketFactory;
 import javax.rmi.ssl.SslRMIServerSocketFactory;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
@@ -27,17 +28,29 @@ import java.rmi.server.RMIServerSocketFactory;
 import java.rmi.server.RMISocketFactory;
 import java.rmi.server.ServerNotActiveException;
 import java.rmi.server.UnicastRemoteObject;
-import java.time.LocalTime;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
 
 import static java.rmi.server.RemoteServer.getClientHost;
 
@@ -52,41 +65,119 @@ import static java.rmi.server.RemoteServer.getClientHost;
 public class IdServer implements IdServerInterface, ReplicaInterface {
     // port number used for this and other servers
     static int portNumber;
-    // Whether additional information should be printed to console
-    static boolean verbose;
+    // Whether login information is kept on the heap or in a memory-mapped file
+    static boolean useMappedStore = false;
+    // When the write-ahead log forces writes to disk
+    static WriteAheadLog.FsyncPolicy fsyncPolicy = WriteAheadLog.FsyncPolicy.ALWAYS;
+    // Most actions sent to a replica in one call, and how long to wait for more to arrive before sending
+    static int replicationBatchSize = 64;
+    static int replicationLingerMillis = 2;
     // Hostname of this server
     static InetAddress myHostname;
     static IdServerForClients idServerForClients;
     static IdServerForServers idServerForServers;
-
-    // Hashmap for login information
-    ConcurrentHashMap<String, LoginInfo> loginData;
+    static IdServerAdmin idServerAdmin;
+
+    // Storage engine for login information
+    LoginStore loginData;
+    // Secondary index over loginData keys in sorted order, kept in sync by applyAction
+    volatile ConcurrentSkipListSet<String> loginNameIndex = new ConcurrentSkipListSet<>();
+    // Index over loginData keys by n-gram for substring search, kept in sync by applyAction
+    volatile NgramIndex loginNameNgrams = new NgramIndex();
+    // Hash tree over loginData for comparing it with other replicas, kept in sync by applyAction
+    volatile MerkleTree merkleTree = new MerkleTree();
+    // Deleted loginNames, kept for a while so replicas can learn of deletes from getChangesSinceTimestamp
+    ConcurrentHashMap<String, Tombstone> tombstones = new ConcurrentHashMap<>();
+    // Timestamp before which deletes may have no tombstone, because they were collected or happened before startup
+    volatile long tombstoneHorizon = 0;
     // Logical clock used in this server
-    LamportClock clock;
+    EventClock clock;
     // List of other servers
     List<ReplicaConnection> replicaConnections = new LinkedList<>();
     // Connection to the coordinator, if it is not this server
-    ReplicaConnection coordinatorConnection = null;
+    volatile ReplicaConnection coordinatorConnection = null;
     // Whether we are currently the coordinator
-    boolean isCoordinator;
+    volatile boolean isCoordinator;
+    // Notified whenever isCoordinator or coordinatorConnection changes, waking clients waiting in getCoordinator
+    private final Object coordinatorChange = new Object();
+    // Number of getCoordinator calls currently waiting for an election to finish
+    private final AtomicInteger coordinatorWaiters = new AtomicInteger();
     // Previous coordinator that we need to get info from if we become coordinator
     ReplicaConnection previousCoordinator = null;
-    // Last few actions performed on database
-    ActionLog actionLog = new ActionLog(ACTION_LOG_SIZE);
-    Integer latestActionTimestamp = -1;
+    // Saved copy of loginData, as a base file plus deltas
+    SnapshotStore snapshotStore = new SnapshotStore(SERIALIZATION_PATH);
+    // loginNames changed since the last save
+    volatile Set<String> dirtyLoginNames = ConcurrentHashMap.newKeySet();
+    // Whether loginData was replaced wholesale, so the next save must be a full one
+    volatile boolean fullSnapshotNeeded = false;
+    // How long the last save took and how much it wrote
+    volatile long lastSnapshotMillis = 0;
+    volatile long lastSnapshotBytes = 0;
+    // Durable log of actions applied since the last snapshot
+    WriteAheadLog writeAheadLog;
+    // Recent actions performed on database, bounded by ACTION_LOG_BYTES
+    ActionLog actionLog = new ActionLog(ACTION_LOG_BYTES);
+    volatile long latestActionTimestamp = -1;
+    // First write-ahead log failure; once set, the server is stopping and acknowledges no more writes
+    private final AtomicReference<IOException> writeAheadLogFailure = new AtomicReference<>();
+    // Notified whenever a replica's latestActionTimestamp advances, waking reads waiting in awaitReadConsistency
+    private final Object replicationProgress = new Object();
+    // Last time this replica was known to have every action the coordinator had, for bounded-staleness reads
+    volatile long upToDateAtMillis = 0;
+    // Held while confirming with the coordinator that we are up to date, so concurrent stale reads share one ping
+    private final Object stalenessCheckLock = new Object();
+    // Held while timestamping an action and queueing it for replicas, so every queue sees actions in timestamp order
+    private final Object replicationOrderLock = new Object();
+    // Locks taken per loginName by every write, so replicated and catch-up writes to different loginNames run
+    // in parallel, but never interleave with another write to the same loginName. Client writes on the
+    // coordinator are applied one at a time by writeSequencer instead, so they take the locks uncontended
+    private final StripedLocks keyLocks = new StripedLocks(KEY_LOCK_STRIPES);
+    // Single thread that applies, timestamps, logs and replicates client writes on the coordinator, in arrival order;
+    // it only queues their write-ahead log records, and each caller waits for its own to be durable
+    private final WriteSequencer writeSequencer = new WriteSequencer(WRITE_QUEUE_CAPACITY, "write-sequencer");
+    // Held while catching up from another server or applying replicated actions, so only one of them runs at a
+    // time and anti-entropy can tell whether anything was applied while it compared records
+    private final Object syncLock = new Object();
     // Whether we are conducting an election
     volatile boolean conductingElection;
     // Whether we've heard back from a better server during election
     volatile boolean lostElection;
+    // When the running election started, or 0 once a coordinator is known
+    private volatile long electionStartNanos = 0;
+    // Latencies, counters and gauges reported through the admin interface
+    final MetricsRegistry metrics = new MetricsRegistry();
 
     private static final String SERIALIZATION_PATH = "src/resources/loginData.ser";
+    private static final String WRITE_AHEAD_LOG_PATH = "src/resources/loginData.wal";
+    private static final String MAPPED_STORE_PATH = "src/resources/loginData.mmap";
     private static final String RMI_CLIENT_REMOTE_NAME = "IdServer";
     private static final String RMI_SERVER_REMOTE_NAME = "IdServerReplica";
+    private static final String RMI_ADMIN_REMOTE_NAME = "IdServerAdmin";
     private static final int AUTO_SAVE_TIME = 30 * 1000;
     private static final int SYNC_PERIOD = 5 * 1000;
-    private static final int ACTION_LOG_SIZE = 3;
+    static final long ACTION_LOG_BYTES = 64L * 1024 * 1024;
+    private static final int MAX_PAGE_SIZE = 1000;
     private static final int ELECTION_WAIT = 2 * 1000;
     private static final int RMI_TIMEOUT = ELECTION_WAIT;
+    private static final int MAX_REPLICATION_BACKLOG = 1024;
+    private static final int STATE_CHUNK_RECORDS = 2000;
+    private static final int CATCH_UP_PAGE_ACTIONS = 2000;
+    private static final int MAX_STATE_CHUNK_RETRIES = 3;
+    private static final int MAX_STATE_TRANSFER_ATTEMPTS = 3;
+    private static final int ANTI_ENTROPY_PERIOD = 60 * 1000;
+    private static final long TOMBSTONE_RETENTION = 24 * 60 * 60 * 1000L;
+    private static final int TOMBSTONE_GC_PERIOD = 10 * 60 * 1000;
+    private static final int MAX_DELTA_RECORDS = 100_000;
+    private static final int READ_CONSISTENCY_WAIT = 500;
+    private static final int REPLICA_PROBE_PERIOD = 500;
+    private static final long MIN_RECONNECT_BACKOFF = 500;
+    private static final long MAX_RECONNECT_BACKOFF = 16 * 1000;
+    private static final int KEY_LOCK_STRIPES = 1024;
+    private static final int WRITE_QUEUE_CAPACITY = 4096;
+    private static final int LOG_QUEUE_CAPACITY = 8192;
+
+    // Log written to the console in the background, at the level chosen on the command line
+    static final ServerLog log = new ServerLog(System.err, LOG_QUEUE_CAPACITY);
 
     public static final String GREY_TEXT = "\u001B[90m";
     public static final String NORMAL_TEXT = "\u001B[0m";
@@ -112,22 +203,74 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
             portNumber = Integer.parseInt(args[1]);
         }
 
-        // sets verbose and potentialReplicas to correct values
-        verbose = false;
+        // sets log level, options and potentialReplicas to correct values
+        fsyncPolicy = WriteAheadLog.FsyncPolicy.ALWAYS;
         List<String> potentialReplicas = new LinkedList<>();
-        if (args.length > 2) {
-            if (args[2].equals("--verbose") || args[2].equals("-v")) {
-                verbose = true;
-            }
-
-            // remaining args are other servers
-            // starts at args[3] if verbose, args[2] if not.
-            if (verbose && args.length > 3) {
-                potentialReplicas = new LinkedList<>(Arrays.asList(args).subList(3, args.length));
-            } else if (verbose) {
-                potentialReplicas = new LinkedList<>();
-            } else {
-                potentialReplicas = new LinkedList<>(Arrays.asList(args).subList(2, args.length));
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--verbose":
+                case "-v":
+                    log.setLevel(ServerLog.Level.TRACE);
+                    break;
+                case "--log-level":
+                    if (i + 1 >= args.length) {
+                        printUsageAndExit();
+                    }
+                    try {
+                        log.setLevel(ServerLog.Level.valueOf(args[++i].toUpperCase()));
+                    } catch (IllegalArgumentException e) {
+                        printUsageAndExit();
+                    }
+                    break;
+                case "--storage":
+                    if (i + 1 >= args.length) {
+                        printUsageAndExit();
+                    }
+                    switch (args[++i]) {
+                        case "heap":
+                            useMappedStore = false;
+                            break;
+                        case "mapped":
+                            useMappedStore = true;
+                            break;
+                        default:
+                            printUsageAndExit();
+                    }
+                    break;
+                case "--fsync":
+                    if (i + 1 >= args.length) {
+                        printUsageAndExit();
+                    }
+                    try {
+                        fsyncPolicy = WriteAheadLog.FsyncPolicy.valueOf(args[++i].toUpperCase());
+                    } catch (IllegalArgumentException e) {
+                        printUsageAndExit();
+                    }
+                    break;
+                case "--replication-batch":
+                case "--replication-linger":
+                    if (i + 1 >= args.length) {
+                        printUsageAndExit();
+                    }
+                    int value = -1;
+                    try {
+                        value = Integer.parseInt(args[i + 1]);
+                    } catch (NumberFormatException e) {
+                        printUsageAndExit();
+                    }
+                    if (args[i].equals("--replication-batch") && value >= 1) {
+                        replicationBatchSize = value;
+                    } else if (args[i].equals("--replication-linger") && value >= 0) {
+                        replicationLingerMillis = value;
+                    } else {
+                        printUsageAndExit();
+                    }
+                    i++;
+                    break;
+                default:
+                    // remaining args are other servers
+                    potentialReplicas.add(args[i]);
+                    break;
             }
         }
 
@@ -158,16 +301,22 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
      * @throws RemoteException Initializing server failed
      */
     public IdServer(List<String> replicas) throws RemoteException {
-        this.clock = new LamportClock();
-        this.loginData = new ConcurrentHashMap<>();
+        log.setSource(getServerName());
+        this.clock = new EventClock();
+        openLoginStore();
         loadData();
+        replayWriteAheadLog();
+        advanceClockPastChangeStamps();
         readyAutomaticSerialization();
+        startTombstoneCollection();
+        registerGauges();
         Runtime.getRuntime().addShutdownHook(new shutdownHook());
 
         // setup RMI
         LocateRegistry.createRegistry(portNumber);
         this.bindForClients();
         this.bindForServers();
+        this.bindForAdmin();
 
         // Attempts to connect to replicas
         logDebug("Attempting connection to each listed replica");
@@ -190,7 +339,10 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
         // begin an election immediately on startup
         initiateElection();
 
+        startReplicaProbe();
         startCoordinatorPing();
+        startReplicationStatusLog();
+        startAntiEntropy();
     }
 
     /**
@@ -262,14 +414,70 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
         }
     }
 
+    /**
+     * Binds the admin interface with the same SSL socket factories as the client interface,
+     * so operators reach it the same way clients reach the server.
+     */
+    public void bindForAdmin() {
+        try {
+            RMIClientSocketFactory rmiClientSocketFactory = new SslRMIClientSocketFactory();
+            RMIServerSocketFactory rmiServerSocketFactory = new SslRMIServerSocketFactory();
+            idServerAdmin = new IdServerAdmin(this);
+            AdminInterface server = (AdminInterface) UnicastRemoteObject.exportObject(idServerAdmin, 0, rmiClientSocketFactory,
+                    rmiServerSocketFactory);
+            Registry registry = LocateRegistry.getRegistry(portNumber);
+            registry.bind(RMI_ADMIN_REMOTE_NAME, server);
+            logDebug("Server bound to admin RMI (port " + portNumber + ")");
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.out.println("Exception occurred: " + e);
+        }
+    }
+
+    /**
+     * Registers the gauges read whenever metrics are requested.
+     */
+    private void registerGauges() {
+        metrics.gauge("actionLog.actions", () -> actionLog.size());
+        metrics.gauge("actionLog.bytes", () -> actionLog.sizeInBytes());
+        metrics.gauge("writeQueue.depth", writeSequencer::getQueueDepth);
+        metrics.gauge("coordinatorWaiters", coordinatorWaiters::get);
+        metrics.gauge("records", () -> loginData.size());
+        metrics.gauge("isCoordinator", () -> isCoordinator ? 1 : 0);
+        metrics.gauge("snapshot.lastBytes", () -> lastSnapshotBytes);
+        metrics.gauge("log.droppedLines", log::getDroppedCount);
+    }
+
     /**
      * prints usage message and exits
      */
     private static void printUsageAndExit() {
-        System.err.println("Usage: $ java IdServer --numport <port#> [--verbose] [ReplicaAddresses]");
+        System.err.println("Usage: $ java IdServer --numport <port#> [--verbose] [--log-level trace|debug|error|off] [--storage heap|mapped] [--fsync always|batched|periodic] [--replication-batch <maxActions>] [--replication-linger <ms>] [ReplicaAddresses]");
         System.exit(1);
     }
 
+    /**
+     * @return every metric of this server right now
+     */
+    MetricsSnapshot getMetrics() {
+        return metrics.snapshot(getServerName());
+    }
+
+    /**
+     * Changes the log level while the server runs.
+     *
+     * @param level one of trace, debug, error or off
+     * @return the level before the change
+     * @throws IllegalArgumentException level is not one of the above
+     */
+    String setLogLevel(String level) {
+        ServerLog.Level newLevel = ServerLog.Level.valueOf(level.toUpperCase());
+        ServerLog.Level previous = log.getLevel();
+        log.setLevel(newLevel);
+        logDebug("Log level changed from {} to {}", previous, newLevel);
+        return previous.toString().toLowerCase();
+    }
+
     /**
      * gets IdServer's host name
      *
@@ -280,63 +488,107 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
     }
 
     /**
-     * if IdServer is set to verbose, prints "Debug: " + message.
+     * Logs a debug message, if the log level includes them.
      *
-     * @param message String to be printed only if verbose is true
+     * @param message String to be printed only at debug level or below
      */
     private void logDebug(String message) {
-        if (verbose) {
-            LocalTime realTime = LocalTime.now().truncatedTo(ChronoUnit.MILLIS);
-            System.err.println(realTime + " debug " + getServerName() + ": " + message);
-        }
+        log.debug(message);
+    }
+
+    /**
+     * Logs a debug message whose "{}" placeholders are filled in only if it is written,
+     * for messages logged on every request.
+     *
+     * @param pattern message with a "{}" for each argument
+     */
+    private void logDebug(String pattern, Object first) {
+        log.debug(pattern, first);
+    }
+
+    private void logDebug(String pattern, Object first, Object second) {
+        log.debug(pattern, first, second);
+    }
+
+    private void logDebug(String pattern, Object first, Object second, Object third) {
+        log.debug(pattern, first, second, third);
     }
 
     /**
-     * Prints "ERROR: " + message.
+     * Logs an error message.
      *
      * @param message Error message to be printed
      */
     private void logError(String message) {
-        LocalTime realTime = LocalTime.now().truncatedTo(ChronoUnit.MILLIS);
-        System.err.println(realTime + " ERROR " + getServerName() + ": " + message);
+        log.error(message);
     }
 
     @Override
     public ServerResponse create(String loginName, String realName, String password) throws RemoteException {
         clock.incrementForEvent("Received CREATE from client");
+        if (!isCoordinator) {
+            return redirectToCoordinator(new ServerResponse(ErrorType.NOT_COORDINATOR));
+        }
         ActionObject action = new ActionObject(ActionObject.ActionKind.CREATE, loginName, password, realName);
-        ServerResponse response = applyAction(action);
+        action.clientIpAddr = getClientIpAddr();
+        ServerResponse response = submitWrite(action);
         clock.incrementForEvent("Completed processing for CREATE");
         return response;
     }
 
     @Override
     public ServerResponse lookup(String loginName) throws RemoteException {
+        return lookup(loginName, ReadConsistency.any());
+    }
+
+    @Override
+    public ServerResponse lookup(String loginName, ReadConsistency consistency) throws RemoteException {
         clock.incrementForEvent("Received LOOKUP from client");
-        logDebug("Looking up info on user " + loginName);
+        if (!awaitReadConsistency(consistency)) {
+            return redirectToCoordinator(new ServerResponse(ErrorType.STALE_REPLICA));
+        }
+        logDebug("Looking up info on user {}", loginName);
+        long readTimestamp = latestActionTimestamp;
         ServerResponse response;
-        if (!loginData.containsKey(loginName)) {
-            logError("User '" + loginName + "' does not exist");
+        LoginInfo lookupResult = loginData.get(loginName);
+        if (lookupResult == null) {
+            logDebug("User '{}' does not exist", loginName);
             response = new ServerResponse(ErrorType.NO_SUCH_USER);
         } else {
-            response = new ServerResponse(loginData.get(loginName).toString());
+            response = new ServerResponse(lookupResult.toString());
         }
+        response.timestamp = readTimestamp;
         clock.incrementForEvent("Completed processing for LOOKUP");
         return response;
     }
 
     @Override
     public ServerResponse reverseLookup(String uuidString) throws RemoteException {
+        return reverseLookup(uuidString, ReadConsistency.any());
+    }
+
+    @Override
+    public ServerResponse reverseLookup(String uuidString, ReadConsistency consistency) throws RemoteException {
         clock.incrementForEvent("Received REVERSE LOOKUP from client");
-        logDebug("Looking up info on user with UUID " + uuidString);
-        Optional<LoginInfo> lookupResult = loginData.values().stream().filter(x -> x.uuid.toString().equals(uuidString)).findFirst();
+        if (!awaitReadConsistency(consistency)) {
+            return redirectToCoordinator(new ServerResponse(ErrorType.STALE_REPLICA));
+        }
+        logDebug("Looking up info on user with UUID {}", uuidString);
+        long readTimestamp = latestActionTimestamp;
+        LoginInfo lookupResult = null;
+        try {
+            lookupResult = loginData.getByUuid(UUID.fromString(uuidString));
+        } catch (IllegalArgumentException ignored) {
+            // not a valid UUID, so it cannot belong to any user
+        }
         ServerResponse response;
-        if (lookupResult.isEmpty()) {
-            logError("No user with UUID " + uuidString + " exists");
+        if (lookupResult == null) {
+            logDebug("No user with UUID {} exists", uuidString);
             response = new ServerResponse(ErrorType.NO_SUCH_USER);
         } else {
-            response = new ServerResponse(lookupResult.get().toString());
+            response = new ServerResponse(lookupResult.toString());
         }
+        response.timestamp = readTimestamp;
         clock.incrementForEvent("Completed processing for REVERSE LOOKUP");
         return response;
     }
@@ -344,8 +596,11 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
     @Override
     public ServerResponse modify(String oldLoginName, String newLoginName, String password) throws RemoteException {
         clock.incrementForEvent("Received MODIFY from client");
+        if (!isCoordinator) {
+            return redirectToCoordinator(new ServerResponse(ErrorType.NOT_COORDINATOR));
+        }
         ActionObject action = new ActionObject(ActionObject.ActionKind.MODIFY, oldLoginName, password, newLoginName);
-        ServerResponse response = applyAction(action);
+        ServerResponse response = submitWrite(action);
         clock.incrementForEvent("Completed processing for MODIFY");
         return response;
     }
@@ -353,8 +608,11 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
     @Override
     public ServerResponse delete(String loginName, String password) throws RemoteException {
         clock.incrementForEvent("Received DELETE from client");
+        if (!isCoordinator) {
+            return redirectToCoordinator(new ServerResponse(ErrorType.NOT_COORDINATOR));
+        }
         ActionObject action = new ActionObject(ActionObject.ActionKind.DELETE, loginName, password, null);
-        ServerResponse response = applyAction(action);
+        ServerResponse response = submitWrite(action);
         clock.incrementForEvent("Completed processing for DELETE");
         return response;
     }
@@ -362,19 +620,19 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
     @Override
     public ServerResponse get(String whatToGet) throws RemoteException {
         clock.incrementForEvent("Received GET from client");
-        logDebug("Got request for data of type '" + whatToGet + "'");
+        logDebug("Got request for data of type '{}'", whatToGet);
         ServerResponse response;
         switch (whatToGet) {
             case "users":
-                response = new ServerResponse(loginData.keySet().toString());
+                response = new ServerResponse(loginData.asMap().keySet().toString());
                 break;
             case "uuids":
                 List<String> uuids = new ArrayList<>();
-                loginData.values().forEach(info -> uuids.add(info.uuid.toString()));
+                loginData.forEach(info -> uuids.add(info.uuid.toString()));
                 response = new ServerResponse(uuids.toString());
                 break;
             case "all":
-                response = new ServerResponse(loginData.toString());
+                response = new ServerResponse(loginData.asMap().toString());
                 break;
             default:
                 response = new ServerResponse(ErrorType.MALFORMED_INPUT);
@@ -384,17 +642,283 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
         return response;
     }
 
+    @Override
+    public PageResponse getPage(String whatToGet, String cursor, int pageSize) throws RemoteException {
+        return getPage(whatToGet, cursor, pageSize, ReadConsistency.any());
+    }
+
+    @Override
+    public PageResponse getPage(String whatToGet, String cursor, int pageSize, ReadConsistency consistency) throws RemoteException {
+        clock.incrementForEvent("Received GET PAGE from client");
+        if (!awaitReadConsistency(consistency)) {
+            return redirectToCoordinator(new PageResponse(ErrorType.STALE_REPLICA));
+        }
+        long readTimestamp = latestActionTimestamp;
+        if (log.isEnabled(ServerLog.Level.DEBUG)) {
+            logDebug("Got request for page of up to " + pageSize + " entries of type '" + whatToGet + "' after '" + cursor + "'");
+        }
+        if (!(whatToGet.equals("users") || whatToGet.equals("uuids") || whatToGet.equals("all")) || pageSize <= 0) {
+            return new PageResponse(ErrorType.MALFORMED_INPUT);
+        }
+        pageSize = Math.min(pageSize, MAX_PAGE_SIZE);
+
+        // walk loginNameIndex in order from just past the cursor, one entry beyond the page to see if more remain
+        NavigableSet<String> remaining = (cursor == null) ? loginNameIndex : loginNameIndex.tailSet(cursor, false);
+        List<String> items = new ArrayList<>(pageSize);
+        String lastLoginName = null;
+        String nextCursor = null;
+        for (String loginName : remaining) {
+            if (items.size() == pageSize) {
+                nextCursor = lastLoginName;
+                break;
+            }
+            if (whatToGet.equals("users")) {
+                items.add(loginName);
+            } else {
+                LoginInfo info = loginData.get(loginName);
+                if (info == null) {
+                    // deleted since we started walking the index
+                    continue;
+                }
+                items.add(whatToGet.equals("uuids") ? info.uuid.toString() : loginName + "=" + info);
+            }
+            lastLoginName = loginName;
+        }
+        clock.incrementForEvent("Completed GET PAGE processing");
+        PageResponse response = new PageResponse(items, nextCursor);
+        response.timestamp = readTimestamp;
+        return response;
+    }
+
+    /**
+     * Waits briefly for this server to meet a read's consistency requirement. The coordinator
+     * always meets it. A replica that has not heard from the coordinator recently enough
+     * pings it to confirm it is still up to date, catching up if not.
+     *
+     * @param consistency how up to date the server must be
+     * @return true if the read may go ahead, false if this replica is still too far behind
+     */
+    private boolean awaitReadConsistency(ReadConsistency consistency) {
+        if (isCoordinator || consistency == null) {
+            return true;
+        }
+        long deadline = System.currentTimeMillis() + READ_CONSISTENCY_WAIT;
+        if (consistency.maxStalenessMillis >= 0 && System.currentTimeMillis() - upToDateAtMillis > consistency.maxStalenessMillis) {
+            synchronized (stalenessCheckLock) {
+                // another read may have confirmed it while we waited for the lock
+                if (System.currentTimeMillis() - upToDateAtMillis > consistency.maxStalenessMillis) {
+                    try {
+                        pingCoordinator();
+                    } catch (RemoteException e) {
+                        logDebug("Could not confirm with coordinator that we are up to date: " + e);
+                    }
+                }
+            }
+            if (System.currentTimeMillis() - upToDateAtMillis > consistency.maxStalenessMillis) {
+                logDebug("Refusing read: last up to date " + (System.currentTimeMillis() - upToDateAtMillis) + " ms ago, need " + consistency);
+                return false;
+            }
+        }
+        // actions the client has seen may still be on their way here
+        if (latestActionTimestamp < consistency.minTimestamp) {
+            synchronized (replicationProgress) {
+                while (latestActionTimestamp < consistency.minTimestamp) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        logDebug("Refusing read: at @" + latestActionTimestamp + ", need " + consistency);
+                        return false;
+                    }
+                    try {
+                        replicationProgress.wait(remaining);
+                    } catch (InterruptedException e) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wakes every read waiting in awaitReadConsistency, after latestActionTimestamp advances
+     */
+    private void signalReplicationProgress() {
+        synchronized (replicationProgress) {
+            replicationProgress.notifyAll();
+        }
+    }
+
+    /**
+     * Fills in a STALE_REPLICA or NOT_COORDINATOR response with the coordinator's address, so the client can go to it instead.
+     *
+     * @param response response to fill in
+     * @return the same response
+     */
+    private <T extends ServerResponse> T redirectToCoordinator(T response) {
+        String coordinatorHostname = getPreviousCoordinatorAddressActual();
+        response.responseText = (coordinatorHostname == null) ? "" : coordinatorHostname;
+        response.timestamp = latestActionTimestamp;
+        return response;
+    }
+
+    @Override
+    public PageResponse search(String searchType, String pattern, String cursor, int limit) throws RemoteException {
+        clock.incrementForEvent("Received SEARCH from client");
+        if (log.isEnabled(ServerLog.Level.DEBUG)) {
+            logDebug("Got " + searchType + " search for '" + pattern + "' after '" + cursor + "', limit " + limit);
+        }
+        if (pattern == null || pattern.isEmpty() || limit <= 0) {
+            return new PageResponse(ErrorType.MALFORMED_INPUT);
+        }
+        limit = Math.min(limit, MAX_PAGE_SIZE);
+
+        // fetch one match beyond the limit to see whether another page remains
+        List<String> matches = new ArrayList<>(limit + 1);
+        switch (searchType) {
+            case "prefix":
+                // names sharing a prefix are contiguous in loginNameIndex
+                NavigableSet<String> fromStart = (cursor == null) ? loginNameIndex.tailSet(pattern, true) : loginNameIndex.tailSet(cursor, false);
+                for (String loginName : fromStart) {
+                    if (!loginName.startsWith(pattern) || matches.size() > limit) {
+                        break;
+                    }
+                    matches.add(loginName);
+                }
+                break;
+            case "substring":
+                // too short to have an n-gram, which would mean walking every name in the table
+                if (!NgramIndex.canSearch(pattern)) {
+                    return new PageResponse(ErrorType.MALFORMED_INPUT);
+                }
+                matches = loginNameNgrams.search(pattern, cursor, limit + 1);
+                break;
+            default:
+                return new PageResponse(ErrorType.MALFORMED_INPUT);
+        }
+
+        String nextCursor = null;
+        if (matches.size() > limit) {
+            matches = new ArrayList<>(matches.subList(0, limit));
+            nextCursor = matches.get(limit - 1);
+        }
+        clock.incrementForEvent("Completed SEARCH processing");
+        return new PageResponse(matches, nextCursor);
+    }
+
+    @Override
+    public List<ServerResponse> createMany(List<CreateRequest> requests) throws RemoteException {
+        clock.incrementForEvent("Received CREATE MANY from client");
+        if (!isCoordinator) {
+            ServerResponse redirect = redirectToCoordinator(new ServerResponse(ErrorType.NOT_COORDINATOR));
+            return Collections.nCopies(requests.size(), redirect);
+        }
+        String clientIpAddr = getClientIpAddr();
+        List<ActionObject> actions = new ArrayList<>(requests.size());
+        for (CreateRequest request : requests) {
+            ActionObject action = new ActionObject(ActionObject.ActionKind.CREATE, request.loginName, request.password, request.realName);
+            action.clientIpAddr = clientIpAddr;
+            actions.add(action);
+        }
+        List<ServerResponse> responses = submitBatch(actions);
+        clock.incrementForEvent("Completed processing for CREATE MANY");
+        return responses;
+    }
+
+    @Override
+    public List<ServerResponse> lookupMany(List<String> loginNames) throws RemoteException {
+        clock.incrementForEvent("Received LOOKUP MANY from client");
+        if (log.isEnabled(ServerLog.Level.DEBUG)) {
+            logDebug("Looking up info on " + loginNames.size() + " users");
+        }
+        List<ServerResponse> responses = new ArrayList<>(loginNames.size());
+        for (String loginName : loginNames) {
+            LoginInfo info = loginData.get(loginName);
+            responses.add(info == null ? new ServerResponse(ErrorType.NO_SUCH_USER) : new ServerResponse(info.toString()));
+        }
+        clock.incrementForEvent("Completed processing for LOOKUP MANY");
+        return responses;
+    }
+
+    @Override
+    public List<ServerResponse> reverseLookupMany(List<String> uuidStrings) throws RemoteException {
+        clock.incrementForEvent("Received REVERSE LOOKUP MANY from client");
+        if (log.isEnabled(ServerLog.Level.DEBUG)) {
+            logDebug("Looking up info on " + uuidStrings.size() + " UUIDs");
+        }
+        List<ServerResponse> responses = new ArrayList<>(uuidStrings.size());
+        for (String uuidString : uuidStrings) {
+            LoginInfo info = null;
+            try {
+                info = loginData.getByUuid(UUID.fromString(uuidString));
+            } catch (IllegalArgumentException ignored) {
+                // not a valid UUID, so it cannot belong to any user
+            }
+            responses.add(info == null ? new ServerResponse(ErrorType.NO_SUCH_USER) : new ServerResponse(info.toString()));
+        }
+        clock.incrementForEvent("Completed processing for REVERSE LOOKUP MANY");
+        return responses;
+    }
+
+    @Override
+    public List<ServerResponse> deleteMany(List<DeleteRequest> requests) throws RemoteException {
+        clock.incrementForEvent("Received DELETE MANY from client");
+        if (!isCoordinator) {
+            ServerResponse redirect = redirectToCoordinator(new ServerResponse(ErrorType.NOT_COORDINATOR));
+            return Collections.nCopies(requests.size(), redirect);
+        }
+        List<ActionObject> actions = new ArrayList<>(requests.size());
+        for (DeleteRequest request : requests) {
+            actions.add(new ActionObject(ActionObject.ActionKind.DELETE, request.loginName, request.password, null));
+        }
+        List<ServerResponse> responses = submitBatch(actions);
+        clock.incrementForEvent("Completed processing for DELETE MANY");
+        return responses;
+    }
+
     @Override
     public ServerResponse getCoordinator() throws RemoteException {
-        while (!isCoordinator && coordinatorConnection == null) {
+        return getCoordinator(0);
+    }
+
+    @Override
+    public ServerResponse getCoordinator(long timeoutMillis) throws RemoteException {
+        String coordinatorHostname = getPreviousCoordinatorAddressActual();
+        if (coordinatorHostname == null) {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            coordinatorWaiters.incrementAndGet();
             try {
-                Thread.sleep(500);
+                synchronized (coordinatorChange) {
+                    while ((coordinatorHostname = getPreviousCoordinatorAddressActual()) == null) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (timeoutMillis > 0 && remaining <= 0) {
+                            break;
+                        }
+                        coordinatorChange.wait(timeoutMillis > 0 ? remaining : 0);
+                    }
+                }
             } catch (InterruptedException e) {
                 throw new RuntimeException(e);
+            } finally {
+                coordinatorWaiters.decrementAndGet();
             }
         }
+        return new ServerResponse(coordinatorHostname);
+    }
+
+    /**
+     * @return number of clients currently waiting in getCoordinator for an election to finish
+     */
+    public int getCoordinatorWaiterCount() {
+        return coordinatorWaiters.get();
+    }
 
-        return new ServerResponse(getPreviousCoordinatorAddressActual());
+    /**
+     * Wakes every client waiting in getCoordinator, after isCoordinator or coordinatorConnection changes
+     */
+    private void signalCoordinatorChange() {
+        synchronized (coordinatorChange) {
+            coordinatorChange.notifyAll();
+        }
     }
 
     /**
@@ -403,17 +927,12 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
      * @return previous coordinator's address
      */
     public String getPreviousCoordinatorAddressActual() {
-        if (!isCoordinator && coordinatorConnection == null) {
-            return null;
-        }
-
-        String coordinatorHostname;
         if (isCoordinator) {
-            coordinatorHostname = myHostname.getHostAddress();
-        } else {
-            coordinatorHostname = coordinatorConnection.hostname;
+            return myHostname.getHostAddress();
         }
-        return coordinatorHostname;
+        // read once, since an election can clear the field between a check and a second read
+        ReplicaConnection coordinator = coordinatorConnection;
+        return (coordinator == null) ? null : coordinator.hostname;
     }
     @Override
     public String getPreviousCoordinatorAddress() throws RemoteException {
@@ -421,108 +940,406 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
     }
 
     /**
-     * Applies a CREATE, MODIFY, or DELETE action.
+     * Gets the address of the client whose call this thread is handling. Must be called on
+     * the RMI thread itself, since writes are applied on the write sequencer's thread.
+     *
+     * @return the client's IP address, or null if it could not be found
+     */
+    private String getClientIpAddr() {
+        try {
+            return getClientHost();
+        } catch (ServerNotActiveException e) {
+            logError("Could not get client IP");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Applies a client write on the coordinator's write sequencer, then waits for its
+     * write-ahead log record to be durable. Only the apply runs on the sequencer; the wait
+     * happens on the caller's thread, so writes queued behind this one are applied and
+     * logged meanwhile and share its fsync.
+     *
+     * @param action the action to be applied
+     * @return a success response or an error response
+     * @throws RemoteException the write could not be logged, so it is not acknowledged
+     */
+    ServerResponse submitWrite(ActionObject action) throws RemoteException {
+        ServerResponse response = writeSequencer.apply(() -> applyAction(action));
+        awaitLogged(action.logSequence);
+        return response;
+    }
+
+    /**
+     * Applies a batch of client writes on the write sequencer, then waits for them to be durable.
+     *
+     * @param actions the actions to be applied
+     * @return a success or error response for each action, in the same order
+     * @throws RemoteException the writes could not be logged, so they are not acknowledged
+     */
+    private List<ServerResponse> submitBatch(List<ActionObject> actions) throws RemoteException {
+        List<ServerResponse> responses = writeSequencer.apply(() -> applyBatch(actions));
+        long lastSequence = 0;
+        for (ActionObject action : actions) {
+            lastSequence = Math.max(lastSequence, action.logSequence);
+        }
+        awaitLogged(lastSequence);
+        return responses;
+    }
+
+    /**
+     * Waits until the write-ahead log record with the given sequence number is durable.
+     *
+     * @param logSequence sequence number of the record, or 0 if nothing was logged
+     * @throws RemoteException the log has failed, so the write must not be acknowledged
+     */
+    private void awaitLogged(long logSequence) throws RemoteException {
+        try {
+            writeAheadLog.awaitDurable(logSequence);
+        } catch (IOException e) {
+            failWriteAheadLog(e);
+        }
+        IOException failure = writeAheadLogFailure.get();
+        if (failure != null) {
+            throw new RemoteException("Write-ahead log failed, so the write was not made durable", failure);
+        }
+    }
+
+    /**
+     * Stops the server after the write-ahead log fails, rather than going on acknowledging
+     * writes that a crash would lose. The shutdown hook still saves a snapshot on the way out.
+     *
+     * @param e why the log failed
+     */
+    private void failWriteAheadLog(IOException e) {
+        if (!writeAheadLogFailure.compareAndSet(null, e)) {
+            return;
+        }
+        logError("Write-ahead log failed, shutting down: " + e);
+        // exit on its own thread, since the caller may hold locks the shutdown hook needs
+        new Thread(() -> System.exit(1)).start();
+    }
+
+    /**
+     * Applies a CREATE, MODIFY, DELETE, or BATCH action, and on the coordinator
+     * logs it and copies it to replicas. Its write-ahead log record is queued but not
+     * waited for; callers that must not answer before it is durable use awaitLogged.
      *
      * @param action the action to be applied
      * @return a success response or an error response
      */
-    private ServerResponse applyAction(ActionObject action) {
+    ServerResponse applyAction(ActionObject action) {
+        // client writes on the coordinator already arrive one at a time from the write sequencer;
+        // the key locks keep replicated and catch-up writes from interleaving on one loginName
+        StripedLocks.Held held = keyLocks.lock(loginNamesOf(action, new ArrayList<>()));
+        try {
+            ServerResponse response = performAction(action);
+            if (response.error == ErrorType.NONE) {
+                recordAppliedAction(action);
+            }
+            response.timestamp = (action.timestamp > 0) ? action.timestamp : latestActionTimestamp;
+            return response;
+        } finally {
+            held.unlock();
+        }
+    }
+
+    /**
+     * Applies several actions as one unit: each is performed in order, and the
+     * ones that succeed are logged and copied to replicas as a single BATCH action.
+     *
+     * @param actions the actions to be applied
+     * @return a success or error response for each action, in the same order
+     */
+    private List<ServerResponse> applyBatch(List<ActionObject> actions) {
+        List<String> loginNames = new ArrayList<>();
+        for (ActionObject action : actions) {
+            loginNamesOf(action, loginNames);
+        }
+        StripedLocks.Held held = keyLocks.lock(loginNames);
+        try {
+            List<ServerResponse> responses = new ArrayList<>(actions.size());
+            List<ActionObject> appliedActions = new ArrayList<>(actions.size());
+            for (ActionObject action : actions) {
+                ServerResponse response = performAction(action);
+                responses.add(response);
+                if (response.error == ErrorType.NONE) {
+                    appliedActions.add(action);
+                }
+            }
+            long batchTimestamp = latestActionTimestamp;
+            if (!appliedActions.isEmpty()) {
+                ActionObject batch = new ActionObject(appliedActions);
+                recordAppliedAction(batch);
+                batchTimestamp = (batch.timestamp > 0) ? batch.timestamp : latestActionTimestamp;
+            }
+            for (ServerResponse response : responses) {
+                response.timestamp = batchTimestamp;
+            }
+            return responses;
+        } finally {
+            held.unlock();
+        }
+    }
+
+    /**
+     * Adds every loginName an action reads or writes to loginNames.
+     *
+     * @param action     action to inspect
+     * @param loginNames list to add to
+     * @return loginNames
+     */
+    private static List<String> loginNamesOf(ActionObject action, List<String> loginNames) {
+        switch (action.kind) {
+            case MODIFY:
+                loginNames.add(action.loginName);
+                loginNames.add(action.data);
+                break;
+            case BATCH:
+                for (ActionObject batchedAction : action.batch) {
+                    loginNamesOf(batchedAction, loginNames);
+                }
+                break;
+            default:
+                loginNames.add(action.loginName);
+                break;
+        }
+        return loginNames;
+    }
+
+    /**
+     * Advances the clock for an applied action. If this replica is the coordinator,
+     * also sets its timestamp, copies it to replicas and adds it to the action log.
+     *
+     * @param action the action that was applied
+     */
+    private void recordAppliedAction(ActionObject action) {
+        // if this replica is the coordinator, set timestamp and copy action to replicas
+        if (isCoordinator) {
+            synchronized (replicationOrderLock) {
+                // ticked under the lock, so timestamps rise in the order actions are replicated
+                long previousTimestamp = latestActionTimestamp;
+                latestActionTimestamp = clock.incrementForEvent("Applied action ", action.kind);
+                stampAction(action, latestActionTimestamp);
+                actionLog.appendAction(latestActionTimestamp, action);
+                copyActionToReplicas(action, latestActionTimestamp, previousTimestamp);
+            }
+        } else {
+            clock.incrementForEvent("Applied action ", action.kind);
+        }
+
+        // logged after stamping, so a replayed action restores its records' change stamps too
+        try {
+            action.logSequence = writeAheadLog.enqueue(action);
+            if (action.kind == ActionObject.ActionKind.BATCH) {
+                for (ActionObject batchedAction : action.batch) {
+                    batchedAction.logSequence = action.logSequence;
+                }
+            }
+        } catch (IOException e) {
+            logError("Could not write " + action.kind + " action to write-ahead log: " + e);
+            failWriteAheadLog(e);
+        }
+    }
+
+    /**
+     * Records the timestamp of a successful action on it and on the records it changed,
+     * leaving tombstones for the loginNames it removed.
+     *
+     * @param action    action that was applied
+     * @param timestamp timestamp the coordinator gave it
+     */
+    private void stampAction(ActionObject action, long timestamp) {
+        if (action.timestamp == 0) {
+            action.timestamp = timestamp;
+        }
+        switch (action.kind) {
+            case CREATE:
+                tombstones.remove(action.loginName);
+                loginData.setChangeStamp(action.loginName, action.timestamp);
+                break;
+            case MODIFY:
+                tombstones.remove(action.data);
+                loginData.setChangeStamp(action.data, action.timestamp);
+                tombstones.put(action.loginName, new Tombstone(action.timestamp));
+                break;
+            case DELETE:
+                tombstones.put(action.loginName, new Tombstone(action.timestamp));
+                break;
+            case BATCH:
+                for (ActionObject batchedAction : action.batch) {
+                    stampAction(batchedAction, action.timestamp);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Performs a CREATE, MODIFY, DELETE, or BATCH action on loginData, without
+     * logging or replicating it.
+     *
+     * @param action the action to be performed
+     * @return a success response or an error response
+     */
+    private ServerResponse performAction(ActionObject action) {
         ServerResponse successResponse = null;
         String password = action.password;
         switch (action.kind) {
             case CREATE: // Creates a new set of loginData
                 String createLoginName = action.loginName;
                 String realName = action.data;
-                logDebug("Creating user " + createLoginName);
+                logDebug("Creating user {}", createLoginName);
 
                 // If entry already exists, handle error
                 if (loginData.containsKey(createLoginName)) {
-                    logError("Name '" + createLoginName + "' already exists");
+                    logDebug("Name '{}' already exists", createLoginName);
                     return new ServerResponse(ErrorType.NAME_COLLISION);
                 }
 
-                String ip = null;
+                LoginInfo loginInfo;
+                if (action.createdInfo != null) {
+                    // this create already happened elsewhere or before a restart, so recreate the same user
+                    loginInfo = new LoginInfo(action.createdInfo);
+                } else {
+                    loginInfo = new LoginInfo(createLoginName, realName, password, action.clientIpAddr);
+                    action.createdInfo = new LoginInfo(loginInfo);
+                }
                 try {
-                    ip = getClientHost();
-                } catch (ServerNotActiveException e) {
-                    logError("Could not get client IP");
-                    e.printStackTrace();
+                    // checked again here, as a create that skipped the key locks could have got in first
+                    if (!loginData.putIfAbsent(loginInfo)) {
+                        logDebug("Name '{}' already exists", createLoginName);
+                        return new ServerResponse(ErrorType.NAME_COLLISION);
+                    }
+                } catch (IllegalArgumentException e) {
+                    logError("Cannot store user '" + createLoginName + "': " + e.getMessage());
+                    return new ServerResponse(ErrorType.MALFORMED_INPUT);
                 }
-
-                LoginInfo loginInfo = new LoginInfo(createLoginName, realName, password, ip);
-                loginData.put(createLoginName, loginInfo);
+                loginNameIndex.add(createLoginName);
+                loginNameNgrams.add(createLoginName);
+                merkleTree.add(loginInfo);
+                dirtyLoginNames.add(createLoginName);
                 successResponse = new ServerResponse(loginInfo.uuid.toString());
                 break;
             case MODIFY: // Changes the username of an existing set of loginData
                 String oldLoginName = action.loginName;
                 String newLoginName = action.data;
-                logDebug("Attempting to change a login name from '" + oldLoginName + "' to '" + newLoginName + "'");
+                logDebug("Attempting to change a login name from '{}' to '{}'", oldLoginName, newLoginName);
 
                 // If loginName to be changed already exists, throw error
-                if (!loginData.containsKey(oldLoginName)) {
+                LoginInfo info = loginData.get(oldLoginName);
+                if (info == null) {
                     return new ServerResponse(ErrorType.NO_SUCH_USER);
                 // else if password is wrong, throw error
-                } else if (!loginData.get(oldLoginName).password.equals(password)) {
+                } else if (!info.password.equals(password)) {
                     return new ServerResponse(ErrorType.INCORRECT_PASSWORD);
                 // else if the new name is already taken, throw error
                 } else if (loginData.containsKey(newLoginName)) {
                     return new ServerResponse(ErrorType.NAME_COLLISION);
                 }
 
-                LoginInfo info = loginData.remove(oldLoginName);
-                info.changeLoginName(newLoginName);
-                loginData.put(newLoginName, info);
-                logDebug("Changed'" + oldLoginName + "'->'" + newLoginName + "'");
+                // take the old record out of the hash tree before the rename changes it
+                merkleTree.remove(info);
+                try {
+                    if (action.modifiedInfo != null) {
+                        // this modify already happened elsewhere or before a restart, so give the record the same result
+                        loginData.remove(oldLoginName);
+                        loginData.put(new LoginInfo(action.modifiedInfo));
+                    } else {
+                        loginData.rename(oldLoginName, newLoginName);
+                    }
+                } catch (IllegalArgumentException e) {
+                    merkleTree.add(info);
+                    logError("Cannot store user '" + newLoginName + "': " + e.getMessage());
+                    return new ServerResponse(ErrorType.MALFORMED_INPUT);
+                }
+                LoginInfo renamedInfo = loginData.get(newLoginName);
+                merkleTree.add(renamedInfo);
+                loginNameIndex.remove(oldLoginName);
+                loginNameIndex.add(newLoginName);
+                loginNameNgrams.remove(oldLoginName);
+                loginNameNgrams.add(newLoginName);
+                dirtyLoginNames.add(oldLoginName);
+                dirtyLoginNames.add(newLoginName);
+                if (action.modifiedInfo == null) {
+                    action.modifiedInfo = new LoginInfo(renamedInfo);
+                }
+                logDebug("Changed '{}'->'{}'", oldLoginName, newLoginName);
                 successResponse = new ServerResponse(ErrorType.NONE);
                 break;
             case DELETE:
                 String deleteLoginName = action.loginName;
-                logDebug("Attempting to delete user with login name'" + deleteLoginName + "'");
+                logDebug("Attempting to delete user with login name '{}'", deleteLoginName);
 
                 // if no such user is found, throw error
-                if (!loginData.containsKey(deleteLoginName)) {
+                LoginInfo deleteInfo = loginData.get(deleteLoginName);
+                if (deleteInfo == null) {
                     return new ServerResponse(ErrorType.NO_SUCH_USER);
                 // else if password is wrong, throw error
-                } else if (!loginData.get(deleteLoginName).password.equals(password)) {
+                } else if (!deleteInfo.password.equals(password)) {
                     return new ServerResponse(ErrorType.INCORRECT_PASSWORD);
                 }
 
                 loginData.remove(deleteLoginName);
-                logDebug("Deleted '" + deleteLoginName + "'");
+                loginNameIndex.remove(deleteLoginName);
+                loginNameNgrams.remove(deleteLoginName);
+                merkleTree.remove(deleteInfo);
+                dirtyLoginNames.add(deleteLoginName);
+                logDebug("Deleted '{}'", deleteLoginName);
+                successResponse = new ServerResponse(ErrorType.NONE);
+                break;
+            case BATCH: // Replays a batch that succeeded as a whole on the coordinator
+                if (log.isEnabled(ServerLog.Level.DEBUG)) {
+                    logDebug("Performing batch of " + action.batch.size() + " actions");
+                }
+                for (ActionObject batchedAction : action.batch) {
+                    performAction(batchedAction);
+                }
                 successResponse = new ServerResponse(ErrorType.NONE);
                 break;
-        }
-        clock.incrementForEvent("Applied " + action.kind + " action");
-
-        // if this replica is the coordinator, set timestamp and copy action to replicas
-        if (isCoordinator) {
-            int previousTimestamp = latestActionTimestamp;
-            latestActionTimestamp = clock.getCurrent();
-            copyActionToReplicas(action, latestActionTimestamp, previousTimestamp);
-            actionLog.appendAction(latestActionTimestamp, action);
         }
 
         return successResponse;
     }
 
     /**
-     * copies an action to all replicaConnections
+     * queues an action to be copied to every replica by its own sender thread, so a slow
+     * replica never holds up the client that made the change
      *
      * @param action action to be copied
      * @param timestamp timestamp of action
      * @param previousActionTimestamp timestamp of previous action
      */
-    private void copyActionToReplicas(ActionObject action, int timestamp, int previousActionTimestamp) {
+    private void copyActionToReplicas(ActionObject action, long timestamp, long previousActionTimestamp) {
         for (ReplicaConnection replica : replicaConnections) {
-            if (replica.isConnected()) {
-                try {
-                    replica.serverStub.playReplicatedAction(action, timestamp, previousActionTimestamp);
-                } catch (RemoteException e) {
-                    logDebug("Could not copy action to replica " + replica);
-                    e.printStackTrace(System.err);
+            replica.enqueue(action, timestamp, previousActionTimestamp);
+        }
+    }
+
+    /**
+     * starts a timed task that logs every replica that has actions waiting to be sent to it
+     */
+    private void startReplicationStatusLog() {
+        TimerTask statusTask = new TimerTask() {
+            public void run() {
+                if (coordinatorWaiters.get() > 0) {
+                    logDebug(coordinatorWaiters.get() + " clients waiting for a coordinator");
+                }
+                if (!isCoordinator) {
+                    return;
+                }
+                if (writeSequencer.getQueueDepth() > 0) {
+                    logDebug(writeSequencer.getQueueDepth() + " client writes waiting to be applied");
+                }
+                for (ReplicaConnection replica : replicaConnections) {
+                    if (replica.getQueueDepth() > 0 || replica.getLag() > 0) {
+                        logDebug("Replication to " + replica + ": " + replica.getQueueDepth() + " actions queued, "
+                                + replica.getLag() + " ms behind, " + replica.droppedBacklogs + " backlogs dropped");
+                    }
                 }
             }
-        }
+        };
+        new Timer(true).scheduleAtFixedRate(statusTask, SYNC_PERIOD, SYNC_PERIOD);
     }
 
     /**
@@ -539,20 +1356,83 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
     }
 
     /**
-     * Writes data to a file using java serialization.
+     * Saves data to file using java serialization, then drops the write-ahead log records
+     * the saved data already covers. Does nothing if nothing has changed since the last save;
+     * otherwise writes only the changed records as a delta, unless a full save is due.
      */
-    public void saveData() {
+    public synchronized void saveData() {
+        if (!fullSnapshotNeeded && dirtyLoginNames.isEmpty()) {
+            logDebug("No changes since last save, skipping");
+            return;
+        }
         clock.incrementForEvent("Saving state to file");
+        long logMark = writeAheadLog.mark();
+        // take the current set of changed names; changes from here on are picked up by the next save
+        Set<String> changedLoginNames = dirtyLoginNames;
+        dirtyLoginNames = ConcurrentHashMap.newKeySet();
+        boolean fullSave = fullSnapshotNeeded || snapshotStore.needsFullSave();
+        fullSnapshotNeeded = false;
+
+        long startTime = System.nanoTime();
+        long bytesWritten;
         try {
-            FileOutputStream dataOut = new FileOutputStream(SERIALIZATION_PATH);
-            ObjectOutputStream out = new ObjectOutputStream(dataOut);
-            out.writeObject(loginData);
-            out.flush();
-            out.close();
-            dataOut.close();
+            if (loginData.isPersistent()) {
+                // the store writes records in place, so saving only has to force them to disk
+                loginData.flush();
+                bytesWritten = 0;
+            } else if (fullSave) {
+                bytesWritten = snapshotStore.writeFull(loginData.asMap());
+            } else {
+                Map<String, LoginInfo> changes = new HashMap<>();
+                for (String loginName : changedLoginNames) {
+                    changes.put(loginName, loginData.get(loginName));
+                }
+                bytesWritten = snapshotStore.writeDelta(changes);
+            }
         } catch (Exception e) {
             System.out.println("Error occurred during serialization.");
             e.printStackTrace();
+            // nothing was saved, so make sure the next attempt covers these changes
+            dirtyLoginNames.addAll(changedLoginNames);
+            fullSnapshotNeeded |= fullSave;
+            return;
+        }
+        metrics.latency("snapshot").recordSince(startTime);
+        lastSnapshotMillis = (System.nanoTime() - startTime) / 1_000_000;
+        lastSnapshotBytes = bytesWritten;
+        if (loginData.isPersistent()) {
+            logDebug("Flushed " + loginData.size() + " records to " + MAPPED_STORE_PATH + " in " + lastSnapshotMillis + " ms");
+        } else {
+            logDebug("Saved " + (fullSave ? "full snapshot of " + loginData.size() : "delta of " + changedLoginNames.size())
+                    + " records (" + bytesWritten + " bytes) in " + lastSnapshotMillis + " ms");
+        }
+
+        try {
+            writeAheadLog.truncateBefore(logMark);
+        } catch (IOException e) {
+            logError("Could not truncate write-ahead log after saving: " + e);
+        }
+    }
+
+    /**
+     * Opens the write-ahead log and replays every action in it on top of the data
+     * loaded from the last save, then starts it accepting new actions.
+     */
+    private void replayWriteAheadLog() {
+        try {
+            writeAheadLog = new WriteAheadLog(WRITE_AHEAD_LOG_PATH, fsyncPolicy);
+            int replayed = writeAheadLog.replay(action -> {
+                if (performAction(action).error == ErrorType.NONE && action.timestamp > 0) {
+                    stampAction(action, action.timestamp);
+                }
+            });
+            if (replayed > 0) {
+                logDebug("Replayed " + replayed + " actions from " + WRITE_AHEAD_LOG_PATH + ": " + getDatabaseStateAsString());
+            }
+            writeAheadLog.start();
+        } catch (IOException e) {
+            logError("Could not open write-ahead log " + WRITE_AHEAD_LOG_PATH + ": " + e);
+            System.exit(1);
         }
     }
 
@@ -565,12 +1445,151 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
                 try {
                     pingCoordinator();
                 } catch (RemoteException e) {
-                    logDebug("Coordinator did not respond to ping, assuming down");
-                    initiateElectionIfNotRunning();
+                    logDebug("Coordinator did not respond to ping, assuming down");
+                    ReplicaConnection coordinator = coordinatorConnection;
+                    if (coordinator != null) {
+                        coordinator.markUnreachable(e);
+                    }
+                    initiateElectionIfNotRunning();
+                }
+            }
+        };
+        new Timer().scheduleAtFixedRate(coordinatorPingTask, 0, SYNC_PERIOD);
+    }
+
+    /**
+     * starts a timed task that tries to reconnect to each unreachable replica once its backoff has passed,
+     * so calls elsewhere can rely on the cached stubs and liveness instead of looking replicas up
+     */
+    private void startReplicaProbe() {
+        TimerTask replicaProbeTask = new TimerTask() {
+            public void run() {
+                for (ReplicaConnection replica : replicaConnections) {
+                    replica.reconnectIfDue();
+                }
+            }
+        };
+        new Timer(true).scheduleAtFixedRate(replicaProbeTask, REPLICA_PROBE_PERIOD, REPLICA_PROBE_PERIOD);
+    }
+
+    /**
+     * Moves the clock past every change stamp loaded from disk, so actions this server stamps
+     * later are never mistaken for older ones. Deletes from before the restart left no
+     * tombstones, so no deltas are served from before this point.
+     */
+    private void advanceClockPastChangeStamps() {
+        long[] latestStamp = {0};
+        loginData.forEach(info -> latestStamp[0] = Math.max(latestStamp[0], info.changeStamp));
+        if (latestStamp[0] > 0) {
+            clock.adjustToIncomingMessage(latestStamp[0], "Loaded change stamps up to " + latestStamp[0]);
+        }
+        tombstoneHorizon = clock.getCurrent();
+    }
+
+    /**
+     * starts a timed task that forgets old tombstones, raising the horizon deltas can be served from
+     */
+    private void startTombstoneCollection() {
+        TimerTask tombstoneCollectionTask = new TimerTask() {
+            public void run() {
+                long cutoff = System.currentTimeMillis() - TOMBSTONE_RETENTION;
+                int collected = 0;
+                for (Map.Entry<String, Tombstone> entry : tombstones.entrySet()) {
+                    Tombstone tombstone = entry.getValue();
+                    if (tombstone.deletedAtMillis < cutoff && tombstones.remove(entry.getKey(), tombstone)) {
+                        tombstoneHorizon = Math.max(tombstoneHorizon, tombstone.changeStamp);
+                        collected++;
+                    }
+                }
+                if (collected > 0) {
+                    logDebug("Collected " + collected + " tombstones, deltas now available since @" + tombstoneHorizon);
+                }
+            }
+        };
+        new Timer(true).scheduleAtFixedRate(tombstoneCollectionTask, TOMBSTONE_GC_PERIOD, TOMBSTONE_GC_PERIOD);
+    }
+
+    /**
+     * starts a timed task that compares this replica's data with the coordinator's and repairs any differences
+     */
+    private void startAntiEntropy() {
+        TimerTask antiEntropyTask = new TimerTask() {
+            public void run() {
+                try {
+                    runAntiEntropy();
+                } catch (RemoteException e) {
+                    logDebug("Anti-entropy with coordinator failed: " + e);
                 }
             }
         };
-        new Timer().scheduleAtFixedRate(coordinatorPingTask, 0, SYNC_PERIOD);
+        new Timer(true).scheduleAtFixedRate(antiEntropyTask, ANTI_ENTROPY_PERIOD, ANTI_ENTROPY_PERIOD);
+    }
+
+    /**
+     * Compares this replica's hash tree with the coordinator's, walking down only the branches
+     * whose hashes differ, then fetches the records in the differing leaves and makes ours match.
+     * Only runs while this replica has seen the same latest action as the coordinator, so any
+     * difference found is real divergence rather than replication still in flight.
+     *
+     * @throws RemoteException connection failed
+     */
+    private void runAntiEntropy() throws RemoteException {
+        ReplicaConnection coordinator = coordinatorConnection;
+        if (isCoordinator || coordinator == null || coordinator.serverStub == null) {
+            return;
+        }
+        long timestampAtStart = latestActionTimestamp;
+
+        int[] candidates = {1};
+        int comparedNodes = 0;
+        while (true) {
+            long[] remoteHashes = coordinator.serverStub.getMerkleHashes(candidates);
+            comparedNodes += candidates.length;
+            List<Integer> differing = new ArrayList<>();
+            for (int i = 0; i < candidates.length; i++) {
+                if (remoteHashes[i] != merkleTree.hashOf(candidates[i])) {
+                    differing.add(candidates[i]);
+                }
+            }
+            if (differing.isEmpty()) {
+                return;
+            } else if (differing.get(0) >= MerkleTree.LEAF_COUNT) {
+                candidates = differing.stream().mapToInt(node -> node - MerkleTree.LEAF_COUNT).toArray();
+                break;
+            }
+            candidates = differing.stream().flatMapToInt(node -> IntStream.of(2 * node, 2 * node + 1)).toArray();
+        }
+
+        Map<String, LoginInfo> remoteRecords = coordinator.serverStub.getMerkleLeafRecords(candidates, timestampAtStart);
+        if (remoteRecords == null) {
+            logDebug("Coordinator moved past @" + timestampAtStart + " during anti-entropy, will retry later");
+            return;
+        }
+        int repaired = 0;
+        synchronized (syncLock) {
+            if (latestActionTimestamp != timestampAtStart) {
+                return;
+            }
+            for (int leaf : candidates) {
+                for (String loginName : new ArrayList<>(merkleTree.namesIn(leaf))) {
+                    if (!remoteRecords.containsKey(loginName)) {
+                        removeRecord(loginName);
+                        repaired++;
+                    }
+                }
+            }
+            // the deletes just repaired left no tombstones here
+            tombstoneHorizon = Math.max(tombstoneHorizon, latestActionTimestamp);
+            for (LoginInfo remoteInfo : remoteRecords.values()) {
+                LoginInfo localInfo = loginData.get(remoteInfo.loginName);
+                if (localInfo == null || MerkleTree.hashOf(localInfo) != MerkleTree.hashOf(remoteInfo)) {
+                    storeRecord(remoteInfo);
+                    repaired++;
+                }
+            }
+        }
+        logDebug("Anti-entropy compared " + comparedNodes + " hash tree nodes and repaired " + repaired
+                + " records in " + candidates.length + " leaves");
     }
 
     /**
@@ -580,55 +1599,188 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
      */
     public void pingCoordinator() throws RemoteException {
         if (!isCoordinator && coordinatorConnection != null) {
+            long pingStartMillis = System.currentTimeMillis();
             if (!coordinatorConnection.serverStub.receivePing(clock.getCurrent(), latestActionTimestamp)) {
                 // we are out of date
                 syncWithCoordinator();
             }
+            // either way we now have everything the coordinator had when the ping began
+            upToDateAtMillis = Math.max(upToDateAtMillis, pingStartMillis);
         }
     }
 
     @Override
-    public boolean receivePing(int timestamp, int replicaLastActionTimestamp) throws RemoteException {
+    public boolean receivePing(long timestamp, long replicaLastActionTimestamp) throws RemoteException {
         clock.adjustToIncomingMessage(timestamp, "Received ping from " + getRequestOriginatorOrDie());
         return (replicaLastActionTimestamp == latestActionTimestamp);
     }
 
     @Override
-    public SyncInfo getMissingInfoSinceTimestamp(int lastActionSeenTimestamp) throws RemoteException {
+    public SyncInfo getMissingInfoSinceTimestamp(long lastActionSeenTimestamp, int maxActions) throws RemoteException {
         if (!isCoordinator) {
             logDebug("Replica asked to sync with us but we are not coordinator -- must be new coordinator catching up");
         }
-        SortedMap<Integer, ActionObject> catchupActions = actionLog.getActionsSinceTimestamp(lastActionSeenTimestamp);
+        if (lastActionSeenTimestamp == latestActionTimestamp) {
+            return null;
+        }
+        int pageSize = Math.max(1, Math.min(maxActions, CATCH_UP_PAGE_ACTIONS));
+        SortedMap<Long, ActionObject> catchupActions = actionLog.getActionsSinceTimestamp(lastActionSeenTimestamp, pageSize);
         if (catchupActions == null) {
-            // can't catch up from log, return entire database
-            return new SyncInfo(loginData);
+            // can't catch up from log, so the replica must fetch the entire database with getStateChunk
+            return SyncInfo.entireDatabase();
         } else if (catchupActions.size() == 0) {
             logError("Replica asking for updates appears to be up-to-date already");
             return null;
         } else {
-            return new SyncInfo(catchupActions);
+            return new SyncInfo(catchupActions, catchupActions.lastKey() < actionLog.getLatestTimestamp());
+        }
+    }
+
+    @Override
+    public StateChunk getStateChunk(String afterLoginName, int maxRecords) throws RemoteException {
+        // read the timestamp first, so every action after it is either on this page already or in the action log
+        long snapshotTimestamp = latestActionTimestamp;
+        int pageSize = Math.max(1, Math.min(maxRecords, STATE_CHUNK_RECORDS));
+        NavigableSet<String> remaining = (afterLoginName == null) ? loginNameIndex : loginNameIndex.tailSet(afterLoginName, false);
+
+        Map<String, LoginInfo> records = new LinkedHashMap<>();
+        String lastLoginName = afterLoginName;
+        Iterator<String> names = remaining.iterator();
+        while (records.size() < pageSize && names.hasNext()) {
+            lastLoginName = names.next();
+            LoginInfo info = loginData.get(lastLoginName);
+            if (info != null) {
+                records.put(lastLoginName, info);
+            }
+        }
+        try {
+            return new StateChunk(snapshotTimestamp, records, lastLoginName, names.hasNext());
+        } catch (IOException e) {
+            throw new RemoteException("Could not encode state chunk", e);
+        }
+    }
+
+    @Override
+    public StateChunk getChangesSinceTimestamp(long sinceTimestamp) throws RemoteException {
+        // read the timestamp first, so every action after it is either in the delta already or in the action log
+        long snapshotTimestamp = latestActionTimestamp;
+        if (sinceTimestamp < tombstoneHorizon) {
+            // deletes from before the horizon may have no tombstone left to report
+            return null;
+        }
+
+        Map<String, LoginInfo> changes = new LinkedHashMap<>();
+        for (Map.Entry<String, Tombstone> tombstone : tombstones.entrySet()) {
+            if (tombstone.getValue().changeStamp > sinceTimestamp) {
+                changes.put(tombstone.getKey(), null);
+            }
+        }
+        Iterator<LoginInfo> records = loginData.asMap().values().iterator();
+        while (records.hasNext() && changes.size() <= MAX_DELTA_RECORDS) {
+            LoginInfo info = records.next();
+            if (info.changeStamp > sinceTimestamp) {
+                changes.put(info.loginName, info);
+            }
+        }
+        if (changes.size() > MAX_DELTA_RECORDS) {
+            // so much changed that copying the whole database is about as cheap
+            return null;
+        }
+        try {
+            return new StateChunk(snapshotTimestamp, changes, null, false);
+        } catch (IOException e) {
+            throw new RemoteException("Could not encode changes since @" + sinceTimestamp, e);
+        }
+    }
+
+    @Override
+    public long[] getMerkleHashes(int[] nodes) throws RemoteException {
+        long[] hashes = new long[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] < 1 || nodes[i] >= 2 * MerkleTree.LEAF_COUNT) {
+                throw new RemoteException("No hash tree node " + nodes[i]);
+            }
+            hashes[i] = merkleTree.hashOf(nodes[i]);
+        }
+        return hashes;
+    }
+
+    @Override
+    public Map<String, LoginInfo> getMerkleLeafRecords(int[] leaves, long expectedLastTimestamp) throws RemoteException {
+        if (latestActionTimestamp != expectedLastTimestamp) {
+            // the replica is comparing against a state we have already moved past
+            return null;
+        }
+        HashMap<String, LoginInfo> records = new HashMap<>();
+        for (int leaf : leaves) {
+            if (leaf < 0 || leaf >= MerkleTree.LEAF_COUNT) {
+                throw new RemoteException("No hash tree leaf " + leaf);
+            }
+            for (String loginName : merkleTree.namesIn(leaf)) {
+                LoginInfo info = loginData.get(loginName);
+                if (info != null) {
+                    records.put(loginName, info);
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Opens the storage engine chosen on the command line. A memory-mapped store picks up
+     * whatever it held when the server last stopped.
+     */
+    private void openLoginStore() {
+        if (useMappedStore) {
+            try {
+                loginData = new MappedLoginStore(MAPPED_STORE_PATH);
+                logDebug("Opened memory-mapped store " + MAPPED_STORE_PATH + " holding " + loginData.size() + " users");
+            } catch (IOException e) {
+                logError("Could not open memory-mapped store " + MAPPED_STORE_PATH + ": " + e);
+                System.exit(1);
+            }
+        } else {
+            loginData = new HeapLoginStore();
         }
     }
 
     /**
-     * Loads serialized data to loginData. If file does not exist, does nothing,
-     * but upon other exceptions returns an appropriate error message.
+     * Loads serialized data and any saved deltas to loginData. If file does not exist, does nothing,
+     * but upon other exceptions returns an appropriate error message. A persistent store already
+     * holds its data, so only the indexes are rebuilt.
      */
-    @SuppressWarnings("unchecked")
     public void loadData() {
-        try {
-            FileInputStream dataIn = new FileInputStream(SERIALIZATION_PATH);
-            ObjectInputStream in = new ObjectInputStream(dataIn);
-            loginData = (ConcurrentHashMap<String, LoginInfo>) in.readObject();
-            logDebug("Loaded data from " + SERIALIZATION_PATH + ": " + getDatabaseStateAsString());
-            in.close();
-            dataIn.close();
-        } catch (FileNotFoundException e) {
-            // Do Nothing
-        } catch (Exception e) {
-            System.out.println("Error occurred during unserialization.");
-            e.printStackTrace();
+        if (!loginData.isPersistent()) {
+            try {
+                ConcurrentHashMap<String, LoginInfo> savedData = snapshotStore.load();
+                if (savedData != null) {
+                    loginData.replaceAll(savedData);
+                    logDebug("Loaded data from " + SERIALIZATION_PATH + ": " + getDatabaseStateAsString());
+                }
+            } catch (Exception e) {
+                System.out.println("Error occurred during unserialization.");
+                e.printStackTrace();
+            }
         }
+        rebuildIndexes();
+    }
+
+    /**
+     * Rebuilds loginNameIndex, loginNameNgrams and merkleTree from scratch to match the current
+     * contents of loginData. Used whenever loginData is replaced wholesale rather than through applyAction.
+     */
+    private void rebuildIndexes() {
+        ConcurrentSkipListSet<String> newLoginNameIndex = new ConcurrentSkipListSet<>();
+        NgramIndex newLoginNameNgrams = new NgramIndex();
+        MerkleTree newMerkleTree = new MerkleTree();
+        loginData.forEach(info -> {
+            newLoginNameIndex.add(info.loginName);
+            newLoginNameNgrams.add(info.loginName);
+            newMerkleTree.add(info);
+        });
+        loginNameIndex = newLoginNameIndex;
+        loginNameNgrams = newLoginNameNgrams;
+        merkleTree = newMerkleTree;
     }
 
     /**
@@ -637,7 +1789,7 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
      * @return Database State as String
      */
     private String getDatabaseStateAsString() {
-        return loginData.toString();
+        return loginData.asMap().toString();
     }
 
     /**
@@ -654,15 +1806,59 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
     }
 
     @Override
-    public void playReplicatedAction(ActionObject action, int actionTimestamp, int expectedLastTimestamp) throws RemoteException {
+    public void playReplicatedAction(ActionObject action, long actionTimestamp, long expectedLastTimestamp) throws RemoteException {
         clock.adjustToIncomingMessage(actionTimestamp, "Got action to replicate");
-        // update before replicating if we're out of date
-        if (latestActionTimestamp != expectedLastTimestamp) {
-            logDebug("Out of date: got an action that follows @" + expectedLastTimestamp + ", but our last action was @" + latestActionTimestamp);
-            syncWithCoordinator();
+        // held while applying, so anti-entropy never repairs over an action that lands mid-repair
+        synchronized (syncLock) {
+            // update before replicating if we're out of date
+            if (latestActionTimestamp != expectedLastTimestamp) {
+                logDebug("Out of date: got an action that follows @" + expectedLastTimestamp + ", but our last action was @" + latestActionTimestamp);
+                syncWithCoordinator();
+                if (actionTimestamp <= latestActionTimestamp) {
+                    // the sync already brought us this action
+                    return;
+                }
+            }
+            action.timestamp = actionTimestamp;
+            if (applyAction(action).error == ErrorType.NONE) {
+                stampAction(action, actionTimestamp);
+            }
+            awaitLogged(action.logSequence);
+            latestActionTimestamp = actionTimestamp;
+            // we have everything the coordinator had when it applied this action, which may have queued a while since
+            upToDateAtMillis = Math.max(upToDateAtMillis, HybridLogicalClock.physicalMillisOf(actionTimestamp));
+        }
+        signalReplicationProgress();
+    }
+
+    @Override
+    public void playReplicatedBatch(ReplicationBatch batch) throws RemoteException {
+        clock.adjustToIncomingMessage(batch.lastTimestamp, "Got batch of actions to replicate");
+        // held while applying, so anti-entropy never repairs over an action that lands mid-repair
+        synchronized (syncLock) {
+            // update before replicating if we're out of date
+            if (latestActionTimestamp != batch.expectedLastTimestamp) {
+                logDebug("Out of date: got a batch that follows @" + batch.expectedLastTimestamp + ", but our last action was @" + latestActionTimestamp);
+                syncWithCoordinator();
+            }
+            // apply the actions the sync did not already bring us as one logged unit
+            SortedMap<Long, ActionObject> missingActions = batch.actions.tailMap(latestActionTimestamp + 1);
+            List<ActionObject> missing = new ArrayList<>(missingActions.size());
+            for (Map.Entry<Long, ActionObject> entry : missingActions.entrySet()) {
+                entry.getValue().timestamp = entry.getKey();
+                missing.add(entry.getValue());
+            }
+            if (!missing.isEmpty()) {
+                ActionObject combined = new ActionObject(missing);
+                combined.timestamp = batch.lastTimestamp;
+                applyAction(combined);
+                stampAction(combined, batch.lastTimestamp);
+                awaitLogged(combined.logSequence);
+            }
+            latestActionTimestamp = Math.max(latestActionTimestamp, batch.lastTimestamp);
+            upToDateAtMillis = Math.max(upToDateAtMillis, HybridLogicalClock.physicalMillisOf(batch.lastTimestamp));
         }
-        applyAction(action);
-        latestActionTimestamp = actionTimestamp;
+        signalReplicationProgress();
     }
 
     /**
@@ -690,13 +1886,288 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
      * @throws RemoteException connection failed
      */
     private void syncWithOtherServer(ReplicaConnection other) throws RemoteException {
-        SyncInfo syncInfo = other.serverStub.getMissingInfoSinceTimestamp(latestActionTimestamp);
-        if (syncInfo.isEntireDatabase()) {
-            this.loginData = new ConcurrentHashMap<>(syncInfo.allData);
-        } else {
-            for (int timestamp : syncInfo.recentActions.keySet()) {
-                applyAction(syncInfo.recentActions.get(timestamp));
+        synchronized (syncLock) {
+            // fetched a page at a time, like a state transfer, so no reply has to carry the whole action log
+            long lastSequence = 0;
+            boolean hasMore = true;
+            while (hasMore) {
+                SyncInfo syncInfo = other.serverStub.getMissingInfoSinceTimestamp(latestActionTimestamp, CATCH_UP_PAGE_ACTIONS);
+                if (syncInfo == null) {
+                    // already up to date
+                    break;
+                } else if (syncInfo.isEntireDatabase()) {
+                    if (!transferChangesSince(other)) {
+                        transferEntireDatabase(other);
+                    }
+                    break;
+                }
+                for (long timestamp : syncInfo.recentActions.keySet()) {
+                    ActionObject action = syncInfo.recentActions.get(timestamp);
+                    action.timestamp = timestamp;
+                    if (applyAction(action).error == ErrorType.NONE) {
+                        stampAction(action, timestamp);
+                    }
+                    lastSequence = Math.max(lastSequence, action.logSequence);
+                    latestActionTimestamp = timestamp;
+                }
+                hasMore = syncInfo.hasMore;
+            }
+            awaitLogged(lastSequence);
+        }
+        signalReplicationProgress();
+    }
+
+    /**
+     * Copies the entire database from another server a page at a time, applying each page as it
+     * arrives so neither side ever holds more than one page beyond its own data. Pages are read
+     * while the other server keeps taking writes, so afterwards every action logged since the first
+     * page is replayed to bring the copy up to date. A failed page is retried from where it left off.
+     *
+     * @param other server to copy from
+     * @throws RemoteException connection failed, or the other server's action log kept moving past the transfer
+     */
+    private void transferEntireDatabase(ReplicaConnection other) throws RemoteException {
+        for (int attempt = 1; attempt <= MAX_STATE_TRANSFER_ATTEMPTS; attempt++) {
+            logDebug("Transferring entire database from " + other + ", attempt " + attempt);
+            long startTime = System.nanoTime();
+            Long snapshotTimestamp = null;
+            String afterLoginName = null;
+            boolean hasMore = true;
+            int failures = 0;
+            long records = 0;
+            long bytes = 0;
+            while (hasMore) {
+                StateChunk chunk;
+                try {
+                    chunk = other.serverStub.getStateChunk(afterLoginName, STATE_CHUNK_RECORDS);
+                    failures = 0;
+                } catch (RemoteException e) {
+                    if (++failures >= MAX_STATE_CHUNK_RETRIES) {
+                        throw e;
+                    }
+                    logDebug("Could not fetch state chunk after '" + afterLoginName + "', retrying: " + e);
+                    continue;
+                }
+                if (snapshotTimestamp == null) {
+                    snapshotTimestamp = chunk.snapshotTimestamp;
+                }
+                applyStateChunk(afterLoginName, chunk);
+                afterLoginName = chunk.lastLoginName;
+                hasMore = chunk.hasMore;
+                records += chunk.recordCount;
+                bytes += chunk.compressedSize();
+            }
+
+            // catch up on what changed while the pages were being read
+            if (!catchUpFromActionLog(other, snapshotTimestamp)) {
+                logDebug("Action log of " + other + " moved past @" + snapshotTimestamp + " during transfer, starting over");
+                continue;
+            }
+            // deletes from before the transfer left no tombstones here
+            tombstoneHorizon = Math.max(tombstoneHorizon, latestActionTimestamp);
+            metrics.latency("sync.full").recordSince(startTime);
+            metrics.counter("sync.full.bytes").add(bytes);
+            logDebug("Transferred " + records + " records (" + bytes + " compressed bytes) from " + other + " in "
+                    + (System.nanoTime() - startTime) / 1_000_000 + " ms, now at @" + latestActionTimestamp);
+
+            // the write-ahead log describes the data we just replaced, so save a fresh base for it
+            fullSnapshotNeeded = true;
+            saveData();
+            return;
+        }
+        throw new RemoteException("Could not complete state transfer from " + other + " after " + MAX_STATE_TRANSFER_ATTEMPTS + " attempts");
+    }
+
+    /**
+     * Copies only the records changed since this server's latest action from another server,
+     * for a replica whose missing actions have left the other server's action log. Deleted records
+     * arrive as tombstones. Like a full transfer, the actions logged since the delta was read are
+     * replayed afterwards.
+     *
+     * @param other server to copy from
+     * @return true if caught up, false if the other server could not supply a delta and the entire database must be copied
+     * @throws RemoteException connection failed, or the delta could not be decoded
+     */
+    private boolean transferChangesSince(ReplicaConnection other) throws RemoteException {
+        long sinceTimestamp = latestActionTimestamp;
+        long startTime = System.nanoTime();
+        StateChunk delta = other.serverStub.getChangesSinceTimestamp(sinceTimestamp);
+        if (delta == null) {
+            logDebug(other + " has no delta since @" + sinceTimestamp + ", copying entire database");
+            return false;
+        }
+        Map<String, LoginInfo> changes;
+        try {
+            changes = delta.getRecords();
+        } catch (IOException e) {
+            throw new RemoteException("Could not decode changes from " + other, e);
+        }
+        for (Map.Entry<String, LoginInfo> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                removeRecord(change.getKey());
+                tombstones.put(change.getKey(), new Tombstone(delta.snapshotTimestamp));
+            } else {
+                tombstones.remove(change.getKey());
+                storeRecord(change.getValue());
+            }
+        }
+        if (!catchUpFromActionLog(other, delta.snapshotTimestamp)) {
+            logDebug("Action log of " + other + " moved past @" + delta.snapshotTimestamp + " during delta transfer");
+            return false;
+        }
+        metrics.latency("sync.delta").recordSince(startTime);
+        metrics.counter("sync.delta.bytes").add(delta.compressedSize());
+        logDebug("Transferred " + changes.size() + " changed records (" + delta.compressedSize() + " compressed bytes) since @"
+                + sinceTimestamp + " from " + other + " in " + (System.nanoTime() - startTime) / 1_000_000 + " ms, now at @"
+                + latestActionTimestamp);
+        saveData();
+        return true;
+    }
+
+    /**
+     * Replays the actions another server logged after a transfer was read, bringing the copy up to date.
+     *
+     * @param other          server the transfer came from
+     * @param sinceTimestamp latest action the transfer already reflects
+     * @return true if caught up, false if the other server's action log no longer reaches back that far
+     * @throws RemoteException connection failed
+     */
+    private boolean catchUpFromActionLog(ReplicaConnection other, long sinceTimestamp) throws RemoteException {
+        SyncInfo suffix = other.serverStub.getMissingInfoSinceTimestamp(sinceTimestamp, CATCH_UP_PAGE_ACTIONS);
+        if (suffix != null && suffix.isEntireDatabase()) {
+            return false;
+        }
+        latestActionTimestamp = sinceTimestamp;
+        while (suffix != null) {
+            for (long timestamp : suffix.recentActions.keySet()) {
+                ActionObject action = suffix.recentActions.get(timestamp);
+                performCatchUpAction(action);
+                stampAction(action, timestamp);
+                latestActionTimestamp = timestamp;
+            }
+            if (!suffix.hasMore) {
+                break;
+            }
+            suffix = other.serverStub.getMissingInfoSinceTimestamp(latestActionTimestamp, CATCH_UP_PAGE_ACTIONS);
+            if (suffix != null && suffix.isEntireDatabase()) {
+                // the log moved past us between pages
+                return false;
+            }
+        }
+        signalReplicationProgress();
+        return true;
+    }
+
+    /**
+     * Makes the local records in a page's range of loginNames match the page: records on the page
+     * are stored, and local records missing from it are removed. The last page also covers every
+     * name after it.
+     *
+     * @param afterLoginName loginName the page was requested after, or null for the first page
+     * @param chunk          page of records
+     * @throws RemoteException the page could not be decoded
+     */
+    private void applyStateChunk(String afterLoginName, StateChunk chunk) throws RemoteException {
+        Map<String, LoginInfo> records;
+        try {
+            records = chunk.getRecords();
+        } catch (IOException e) {
+            throw new RemoteException("Could not decode state chunk", e);
+        }
+
+        NavigableSet<String> covered = (afterLoginName == null) ? loginNameIndex : loginNameIndex.tailSet(afterLoginName, false);
+        if (chunk.hasMore) {
+            covered = covered.headSet(chunk.lastLoginName, true);
+        }
+        for (String loginName : covered) {
+            if (!records.containsKey(loginName)) {
+                removeRecord(loginName);
+            }
+        }
+        for (LoginInfo info : records.values()) {
+            storeRecord(info);
+        }
+    }
+
+    /**
+     * Sets local records to the state an action left them in on the server that performed it,
+     * without checking passwords or collisions, so replaying it over a copy that may already
+     * include it gives the same result either way.
+     *
+     * @param action action performed on the other server
+     */
+    private void performCatchUpAction(ActionObject action) {
+        switch (action.kind) {
+            case CREATE:
+                if (action.createdInfo == null) {
+                    performAction(action);
+                } else {
+                    storeRecord(new LoginInfo(action.createdInfo));
+                }
+                break;
+            case MODIFY:
+                if (action.modifiedInfo == null) {
+                    performAction(action);
+                } else {
+                    removeRecord(action.loginName);
+                    storeRecord(new LoginInfo(action.modifiedInfo));
+                }
+                break;
+            case DELETE:
+                removeRecord(action.loginName);
+                break;
+            case BATCH:
+                for (ActionObject batchedAction : action.batch) {
+                    performCatchUpAction(batchedAction);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Stores a record, replacing any with the same loginName, and updates the indexes to match.
+     *
+     * @param info record to store
+     */
+    private void storeRecord(LoginInfo info) {
+        StripedLocks.Held held = keyLocks.lock(info.loginName);
+        try {
+            LoginInfo previous = loginData.get(info.loginName);
+            try {
+                loginData.put(info);
+            } catch (IllegalArgumentException e) {
+                logError("Cannot store user '" + info.loginName + "': " + e.getMessage());
+                return;
+            }
+            if (previous != null) {
+                merkleTree.remove(previous);
+            }
+            merkleTree.add(info);
+            loginNameIndex.add(info.loginName);
+            loginNameNgrams.add(info.loginName);
+            dirtyLoginNames.add(info.loginName);
+        } finally {
+            held.unlock();
+        }
+    }
+
+    /**
+     * Removes a record if there is one, and updates the indexes to match.
+     *
+     * @param loginName loginName of record to remove
+     */
+    private void removeRecord(String loginName) {
+        StripedLocks.Held held = keyLocks.lock(loginName);
+        try {
+            LoginInfo previous = loginData.remove(loginName);
+            if (previous != null) {
+                merkleTree.remove(previous);
             }
+            loginNameIndex.remove(loginName);
+            loginNameNgrams.remove(loginName);
+            dirtyLoginNames.add(loginName);
+        } finally {
+            held.unlock();
         }
     }
 
@@ -720,30 +2191,38 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
         }
 
         clock.incrementForEvent("Initiating election");
+        metrics.counter("elections").increment();
+        electionStartNanos = System.nanoTime();
         isCoordinator = false;
         coordinatorConnection = null;
+        signalCoordinatorChange();
         conductingElection = true;
         lostElection = false;
         String previousCoordinatorHostname = null;
         // Communicates election with other replicas
         for (ReplicaConnection replica : replicaConnections) {
-            // if serverStub doesn't exist ignore replica
-            if (replica.serverStub == null) {
+            // ignore replicas we know to be unreachable
+            if (!replica.isConnected()) {
                 continue;
             }
             // if there is no known previous coordinator tries to get previous coordinator address from replica
             if (previousCoordinatorHostname == null) {
                 try {
                     previousCoordinatorHostname = replica.serverStub.getPreviousCoordinatorAddress();
-                } catch (RemoteException ignored) {
+                    replica.markReachable();
+                } catch (RemoteException e) {
+                    replica.markUnreachable(e);
+                    continue;
                 }
             }
             // if the other hostname is a bigger bully, announce the election to them
             if (isBiggerBully(replica)) {
                 try {
                     replica.serverStub.electionAnnounce(clock.getCurrent());
+                    replica.markReachable();
                 } catch (RemoteException e) {
                     logDebug("Could not announce election to replica " + replica + ", continuing");
+                    replica.markUnreachable(e);
                 }
             }
         }
@@ -811,6 +2290,7 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
         clock.incrementForEvent("Becoming coordinator");
         isCoordinator = true;
         coordinatorConnection = null;
+        signalCoordinatorChange();
 
         // get data from previous coordinator if needed
         if (previousCoordinator != null) {
@@ -829,21 +2309,25 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
         for (ReplicaConnection replica : getActiveReplicas()) {
             try {
                 replica.serverStub.electionVictory(clock.getCurrent());
+                replica.markReachable();
             } catch (RemoteException e) {
                 logDebug("Could not proclaim election victory to replica " + replica + ", continuing");
+                replica.markUnreachable(e);
             }
         }
 
+        recordElectionEnd();
         logDebug("Database state after becoming coordinator: " + getDatabaseStateAsString());
     }
 
     @Override
-    public void electionAnnounce(int timestamp) throws RemoteException {
+    public void electionAnnounce(long timestamp) throws RemoteException {
         clock.adjustToIncomingMessage(timestamp, "Received election announcement");
         ReplicaConnection requestOriginator = getRequestOriginatorOrDie();
         // we received notice of an election
         if (!isBiggerBully(requestOriginator)) {
-            // tell the weaker server to shut up
+            // tell the weaker server to shut up; it just called us, so it is worth reconnecting to
+            requestOriginator.ensureConnected();
             if (requestOriginator.isConnected()) {
                 requestOriginator.serverStub.electionResponse(clock.getCurrent());
                 clock.incrementForEvent("Stopped election from weaker server");
@@ -854,7 +2338,7 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
     }
 
     @Override
-    public void electionResponse(int timestamp) throws RemoteException {
+    public void electionResponse(long timestamp) throws RemoteException {
         clock.adjustToIncomingMessage(timestamp, "Received election acknowledgement (shut up)");
         // we received a response from a stronger server
         logDebug("Lost election" + (isCoordinator ? " (was previously coordinator)" : ""));
@@ -863,7 +2347,7 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
     }
 
     @Override
-    public void electionVictory(int timestamp) throws RemoteException {
+    public void electionVictory(long timestamp) throws RemoteException {
         clock.adjustToIncomingMessage(timestamp, "Received notification of an election victory");
         ReplicaConnection requestOriginator = getRequestOriginatorOrDie();
         requestOriginator.ensureConnected();
@@ -881,6 +2365,19 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
         actionLog.clear();
         isCoordinator = false;
         coordinatorConnection = newCoordinator;
+        signalCoordinatorChange();
+        recordElectionEnd();
+    }
+
+    /**
+     * Records how long the election this server started took, now that a coordinator is known.
+     */
+    private void recordElectionEnd() {
+        long startNanos = electionStartNanos;
+        if (startNanos != 0) {
+            electionStartNanos = 0;
+            metrics.latency("election").recordSince(startNanos);
+        }
     }
 
     /**
@@ -926,6 +2423,7 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
     private class shutdownHook extends Thread {
         public void run() {
             saveData();
+            writeAheadLog.close();
             System.out.println("Data Saved. Shutting Down.");
         }
     }
@@ -933,13 +2431,143 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
     private class ReplicaConnection {
         public String hostname;
         public ReplicaInterface serverStub;
+        // actions waiting to be sent to this replica, oldest first
+        private final BlockingQueue<QueuedAction> outbound = new ArrayBlockingQueue<>(MAX_REPLICATION_BACKLOG);
+        private Thread senderThread = null;
+        // timestamps of the last action queued for this replica and the last one it accepted
+        volatile long lastQueuedTimestamp = -1;
+        volatile long lastSentTimestamp = -1;
+        // number of times this replica fell so far behind that its queued actions were dropped
+        volatile int droppedBacklogs = 0;
+        // round trip of each call copying actions to this replica
+        private final LatencyHistogram replicationLatency;
+        // whether the last call to this replica, or the last attempt to look it up, succeeded
+        private volatile boolean reachable = false;
+        // earliest time the replica probe may look this replica up again, and the wait after that if it fails too
+        private volatile long nextReconnectMillis = 0;
+        private long reconnectBackoffMillis = MIN_RECONNECT_BACKOFF;
 
         public ReplicaConnection(String hostname) {
             this.hostname = hostname;
             serverStub = null;
+            replicationLatency = metrics.latency("replicate." + hostname);
+            metrics.gauge("replicate." + hostname + ".queued", this::getQueueDepth);
+            metrics.gauge("replicate." + hostname + ".lagMillis", this::getLag);
+            metrics.gauge("replicate." + hostname + ".droppedBacklogs", () -> droppedBacklogs);
+        }
+
+        /**
+         * Queues an action for this replica's sender thread, starting the thread if needed. If the
+         * queue is full, the replica is too far behind to be worth feeding one action at a time:
+         * the backlog is dropped, and the gap makes the replica sync with us on the next action
+         * or ping.
+         *
+         * @param action action to be copied
+         * @param timestamp timestamp of action
+         * @param previousActionTimestamp timestamp of previous action
+         */
+        public synchronized void enqueue(ActionObject action, long timestamp, long previousActionTimestamp) {
+            if (senderThread == null) {
+                senderThread = new Thread(this::runSender, "replicate-" + hostname);
+                senderThread.setDaemon(true);
+                senderThread.start();
+            }
+            lastQueuedTimestamp = timestamp;
+            if (!outbound.offer(new QueuedAction(action, timestamp, previousActionTimestamp))) {
+                dropBacklog("fell more than " + MAX_REPLICATION_BACKLOG + " actions behind");
+            }
+        }
+
+        /**
+         * Body of the sender thread: gathers queued actions into batches of consecutive actions,
+         * lingering briefly for more to arrive, and sends each batch to the replica in one call.
+         */
+        private void runSender() {
+            // first action of the next batch, taken from the queue but not part of the last batch
+            QueuedAction carried = null;
+            while (true) {
+                ReplicationBatch batch;
+                try {
+                    QueuedAction first = (carried != null) ? carried : outbound.take();
+                    carried = null;
+                    batch = new ReplicationBatch(first.previousActionTimestamp);
+                    batch.add(first.timestamp, first.action);
+                    long deadline = System.currentTimeMillis() + replicationLingerMillis;
+                    while (batch.size() < replicationBatchSize) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        QueuedAction next = (remaining > 0) ? outbound.poll(remaining, TimeUnit.MILLISECONDS) : outbound.poll();
+                        if (next == null) {
+                            break;
+                        } else if (next.previousActionTimestamp != batch.lastTimestamp) {
+                            // a backlog was dropped in between, so this starts a new run
+                            carried = next;
+                            break;
+                        }
+                        batch.add(next.timestamp, next.action);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                // the replica probe reconnects unreachable replicas, so don't wait on a lookup here
+                if (!isConnected()) {
+                    carried = null;
+                    dropBacklog("is not reachable");
+                    continue;
+                }
+                long sendStart = System.nanoTime();
+                try {
+                    if (batch.size() == 1) {
+                        serverStub.playReplicatedAction(batch.actions.get(batch.firstTimestamp), batch.firstTimestamp, batch.expectedLastTimestamp);
+                    } else {
+                        serverStub.playReplicatedBatch(batch);
+                    }
+                    lastSentTimestamp = batch.lastTimestamp;
+                    replicationLatency.recordSince(sendStart);
+                    markReachable();
+                } catch (RemoteException e) {
+                    logDebug("Could not copy " + batch.size() + " actions to replica " + hostname + ": " + e);
+                    markUnreachable(e);
+                    carried = null;
+                    dropBacklog("failed to accept actions");
+                }
+            }
+        }
+
+        /**
+         * Throws away every queued action; the replica catches up by syncing instead.
+         *
+         * @param reason why the backlog is being dropped, for the log
+         */
+        private synchronized void dropBacklog(String reason) {
+            int dropped = outbound.size();
+            outbound.clear();
+            droppedBacklogs++;
+            lastSentTimestamp = lastQueuedTimestamp;
+            logDebug("Replica " + hostname + " " + reason + "; dropped " + dropped + " queued actions, it will catch up by syncing");
+        }
+
+        /**
+         * @return number of actions waiting to be sent to this replica
+         */
+        public int getQueueDepth() {
+            return outbound.size();
         }
 
-        public boolean attemptConnection() {
+        /**
+         * @return how far the last action sent to this replica trails the last one queued for it, in milliseconds
+         */
+        public long getLag() {
+            return Math.max(0, HybridLogicalClock.physicalMillisOf(lastQueuedTimestamp) - HybridLogicalClock.physicalMillisOf(lastSentTimestamp));
+        }
+
+        /**
+         * Looks the replica up in its registry and caches the stub. A failed lookup
+         * doubles the wait before the replica probe tries again.
+         *
+         * @return true if the replica was found
+         */
+        public synchronized boolean attemptConnection() {
             boolean success = false;
 
             try {
@@ -954,59 +2582,140 @@ public class IdServer implements IdServerInterface, ReplicaInterface {
 //                logDebug("Failed to connect to replica " + hostname + ", exception " + e);
             }
 
+            if (success) {
+                markReachable();
+            } else {
+                backOff();
+            }
             return success;
         }
 
+        /**
+         * @return true if this replica has a stub and the last call to it succeeded; never contacts the replica
+         */
         public boolean isConnected() {
-            if (serverStub == null) {
-                return false;
-            }
-            try {
-                Registry registry = LocateRegistry.getRegistry(hostname, portNumber);
-                this.serverStub = (ReplicaInterface) registry.lookup(RMI_SERVER_REMOTE_NAME);
-                return true;
-            } catch (Exception ignored) {
-
-            }
-            return false;
+            return reachable && serverStub != null;
         }
 
+        /**
+         * Looks the replica up right away if it is not connected, ignoring any backoff. For when
+         * there is fresh evidence it is up, such as a call from it.
+         */
         public void ensureConnected() {
             if (!this.isConnected()) {
                 this.attemptConnection();
             }
         }
 
+        /**
+         * Looks the replica up if it is not connected and its backoff has passed
+         */
+        void reconnectIfDue() {
+            if (!isConnected() && System.currentTimeMillis() >= nextReconnectMillis) {
+                attemptConnection();
+            }
+        }
+
+        /**
+         * Records that a call to this replica succeeded
+         */
+        public void markReachable() {
+            if (!reachable) {
+                synchronized (this) {
+                    reachable = true;
+                    reconnectBackoffMillis = MIN_RECONNECT_BACKOFF;
+                    nextReconnectMillis = 0;
+                }
+            }
+        }
+
+        /**
+         * Records that a call to this replica failed, so callers skip it until the replica probe reconnects.
+         *
+         * @param cause exception the call failed with
+         */
+        public synchronized void markUnreachable(RemoteException cause) {
+            if (reachable) {
+                logDebug("Replica " + hostname + " is unreachable: " + cause);
+            }
+            backOff();
+        }
+
+        private synchronized void backOff() {
+            reachable = false;
+            nextReconnectMillis = System.currentTimeMillis() + reconnectBackoffMillis;
+            reconnectBackoffMillis = Math.min(2 * reconnectBackoffMillis, MAX_RECONNECT_BACKOFF);
+        }
+
         @Override
         public String toString() {
             return hostname;
         }
     }
 
-    private class LamportClock {
-        private int timestamp;
+    /**
+     * Marks a deleted loginName, so getChangesSinceTimestamp can report the delete
+     */
+    private static class Tombstone {
+        final long changeStamp;
+        final long deletedAtMillis = System.currentTimeMillis();
+
+        Tombstone(long changeStamp) {
+            this.changeStamp = changeStamp;
+        }
+    }
+
+    /**
+     * An action waiting in a ReplicaConnection's queue
+     */
+    private static class QueuedAction {
+        final ActionObject action;
+        final long timestamp;
+        final long previousActionTimestamp;
+
+        QueuedAction(ActionObject action, long timestamp, long previousActionTimestamp) {
+            this.action = action;
+            this.timestamp = timestamp;
+            this.previousActionTimestamp = previousActionTimestamp;
+        }
+    }
+
+    /**
+     * Hybrid logical clock that logs each event it is advanced for
+     */
+    private class EventClock {
+        private final HybridLogicalClock timestamp = new HybridLogicalClock();
+
+        public EventClock() {
+            incrementForEvent("Hybrid logical clock initialized");
+        }
 
-        public LamportClock() {
-            timestamp = 0;
-            incrementForEvent("Lamport clock initialized");
+        public long getCurrent() {
+            return timestamp.getCurrent();
         }
 
-        public synchronized int getCurrent() {
-            return timestamp;
+        public long incrementForEvent(String event) {
+            return incrementForEvent(event, "");
         }
 
-        public synchronized void incrementForEvent(String event) {
-            timestamp++;
-            logDebug(GREY_TEXT + "Timestamp @" + timestamp + ": " + event + NORMAL_TEXT);
+        /**
+         * Advances the clock for an event described by event followed by detail, which is
+         * only turned into a string if the event is logged.
+         */
+        public long incrementForEvent(String event, Object detail) {
+            long current = timestamp.tick();
+            if (log.isEnabled(ServerLog.Level.TRACE)) {
+                log.trace("Timestamp @{}: {}{}", current, event, detail);
+            }
+            return current;
         }
 
-        public synchronized void adjustToIncomingMessage(int otherTimestamp, String event) {
-            int oldValue = timestamp;
-            logDebug(GREY_TEXT + "Incoming message event @ " + oldValue + ": " + (event == null ? "(empty)" : event) + ", current timestamp " + oldValue + NORMAL_TEXT);
-            timestamp = Math.max(oldValue, otherTimestamp + 1);
-            if (timestamp != oldValue) {
-                logDebug("Timestamp advanced from " + oldValue + " to " + timestamp);
+        public long adjustToIncomingMessage(long otherTimestamp, String event) {
+            long current = timestamp.receive(otherTimestamp);
+            if (log.isEnabled(ServerLog.Level.TRACE)) {
+                log.trace("Incoming message event @ {}: {}, current timestamp {}", otherTimestamp, event == null ? "(empty)" : event, current);
             }
+            return current;
         }
     }
 }
@@ -0,0 +1,24 @@
+package src.Server;
+
+import src.Common.AdminInterface;
+import src.Common.MetricsSnapshot;
+
+import java.rmi.RemoteException;
+
+public class IdServerAdmin implements AdminInterface {
+    private IdServer backendServer;
+
+    public IdServerAdmin(IdServer backendServer) {
+        this.backendServer = backendServer;
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() throws RemoteException {
+        return backendServer.getMetrics();
+    }
+
+    @Override
+    public String setLogLevel(String level) throws RemoteException {
+        return backendServer.setLogLevel(level);
+    }
+}
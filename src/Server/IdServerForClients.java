@@ -1,49 +1,158 @@
 package src.Server;
 
+import src.Common.CreateRequest;
+import src.Common.DeleteRequest;
 import src.Common.IdServerInterface;
+import src.Common.PageResponse;
+import src.Common.ReadConsistency;
 import src.Common.ServerResponse;
 
 import java.rmi.RemoteException;
+import java.util.List;
 
+/**
+ * What clients see of an IdServer: passes each call through to it, recording every call's
+ * latency and the ErrorType of every response it returns.
+ */
 public class IdServerForClients implements IdServerInterface {
     private IdServer backendServer;
+    // latency and errors of each method, overloads counted together
+    private final MetricsRegistry.Operation createOp;
+    private final MetricsRegistry.Operation lookupOp;
+    private final MetricsRegistry.Operation reverseLookupOp;
+    private final MetricsRegistry.Operation modifyOp;
+    private final MetricsRegistry.Operation deleteOp;
+    private final MetricsRegistry.Operation getOp;
+    private final MetricsRegistry.Operation getPageOp;
+    private final MetricsRegistry.Operation searchOp;
+    private final MetricsRegistry.Operation createManyOp;
+    private final MetricsRegistry.Operation lookupManyOp;
+    private final MetricsRegistry.Operation reverseLookupManyOp;
+    private final MetricsRegistry.Operation deleteManyOp;
+    private final MetricsRegistry.Operation getCoordinatorOp;
 
     public IdServerForClients(IdServer backendServer) {
         this.backendServer = backendServer;
+        createOp = backendServer.metrics.operation("create");
+        lookupOp = backendServer.metrics.operation("lookup");
+        reverseLookupOp = backendServer.metrics.operation("reverseLookup");
+        modifyOp = backendServer.metrics.operation("modify");
+        deleteOp = backendServer.metrics.operation("delete");
+        getOp = backendServer.metrics.operation("get");
+        getPageOp = backendServer.metrics.operation("getPage");
+        searchOp = backendServer.metrics.operation("search");
+        createManyOp = backendServer.metrics.operation("createMany");
+        lookupManyOp = backendServer.metrics.operation("lookupMany");
+        reverseLookupManyOp = backendServer.metrics.operation("reverseLookupMany");
+        deleteManyOp = backendServer.metrics.operation("deleteMany");
+        getCoordinatorOp = backendServer.metrics.operation("getCoordinator");
     }
 
     @Override
     public ServerResponse create(String loginName, String realName, String password) throws RemoteException {
-        return backendServer.create(loginName, realName, password);
+        return timed(createOp, () -> backendServer.create(loginName, realName, password));
     }
 
     @Override
     public ServerResponse lookup(String loginName) throws RemoteException {
-        return backendServer.lookup(loginName);
+        return timed(lookupOp, () -> backendServer.lookup(loginName));
+    }
+
+    @Override
+    public ServerResponse lookup(String loginName, ReadConsistency consistency) throws RemoteException {
+        return timed(lookupOp, () -> backendServer.lookup(loginName, consistency));
     }
 
     @Override
     public ServerResponse reverseLookup(String uuidString) throws RemoteException {
-        return backendServer.reverseLookup(uuidString);
+        return timed(reverseLookupOp, () -> backendServer.reverseLookup(uuidString));
+    }
+
+    @Override
+    public ServerResponse reverseLookup(String uuidString, ReadConsistency consistency) throws RemoteException {
+        return timed(reverseLookupOp, () -> backendServer.reverseLookup(uuidString, consistency));
     }
 
     @Override
     public ServerResponse modify(String oldLoginName, String newLoginName, String password) throws RemoteException {
-        return backendServer.modify(oldLoginName, newLoginName, password);
+        return timed(modifyOp, () -> backendServer.modify(oldLoginName, newLoginName, password));
     }
 
     @Override
     public ServerResponse delete(String loginName, String password) throws RemoteException {
-        return backendServer.delete(loginName, password);
+        return timed(deleteOp, () -> backendServer.delete(loginName, password));
     }
 
     @Override
     public ServerResponse get(String whatToGet) throws RemoteException {
-        return backendServer.get(whatToGet);
+        return timed(getOp, () -> backendServer.get(whatToGet));
+    }
+
+    @Override
+    public PageResponse getPage(String whatToGet, String cursor, int pageSize) throws RemoteException {
+        return timed(getPageOp, () -> backendServer.getPage(whatToGet, cursor, pageSize));
+    }
+
+    @Override
+    public PageResponse getPage(String whatToGet, String cursor, int pageSize, ReadConsistency consistency) throws RemoteException {
+        return timed(getPageOp, () -> backendServer.getPage(whatToGet, cursor, pageSize, consistency));
+    }
+
+    @Override
+    public PageResponse search(String searchType, String pattern, String cursor, int limit) throws RemoteException {
+        return timed(searchOp, () -> backendServer.search(searchType, pattern, cursor, limit));
+    }
+
+    @Override
+    public List<ServerResponse> createMany(List<CreateRequest> requests) throws RemoteException {
+        return timed(createManyOp, () -> backendServer.createMany(requests));
+    }
+
+    @Override
+    public List<ServerResponse> lookupMany(List<String> loginNames) throws RemoteException {
+        return timed(lookupManyOp, () -> backendServer.lookupMany(loginNames));
+    }
+
+    @Override
+    public List<ServerResponse> reverseLookupMany(List<String> uuidStrings) throws RemoteException {
+        return timed(reverseLookupManyOp, () -> backendServer.reverseLookupMany(uuidStrings));
+    }
+
+    @Override
+    public List<ServerResponse> deleteMany(List<DeleteRequest> requests) throws RemoteException {
+        return timed(deleteManyOp, () -> backendServer.deleteMany(requests));
     }
 
     @Override
     public ServerResponse getCoordinator() throws RemoteException {
-        return backendServer.getCoordinator();
+        return timed(getCoordinatorOp, () -> backendServer.getCoordinator());
+    }
+
+    @Override
+    public ServerResponse getCoordinator(long timeoutMillis) throws RemoteException {
+        return timed(getCoordinatorOp, () -> backendServer.getCoordinator(timeoutMillis));
+    }
+
+    /**
+     * Makes a call to the backend server, recording its latency and result under op.
+     */
+    private static <T> T timed(MetricsRegistry.Operation op, BackendCall<T> call) throws RemoteException {
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = call.call();
+        } catch (RemoteException | RuntimeException e) {
+            op.recordException(start);
+            throw e;
+        }
+        op.record(start, result);
+        return result;
+    }
+
+    /**
+     * one call on the backend server
+     */
+    private interface BackendCall<T> {
+        T call() throws RemoteException;
     }
 }
@@ -1,6 +1,7 @@
 package src.Server;
 
 import java.rmi.RemoteException;
+import java.util.Map;
 
 public class IdServerForServers implements ReplicaInterface {
     private IdServer backendServer;
@@ -10,32 +11,57 @@ public class IdServerForServers implements ReplicaInterface {
     }
 
     @Override
-    public void playReplicatedAction(ActionObject action, int timestamp, int expectedLastTimestamp) throws RemoteException {
+    public void playReplicatedAction(ActionObject action, long timestamp, long expectedLastTimestamp) throws RemoteException {
         backendServer.playReplicatedAction(action, timestamp, expectedLastTimestamp);
     }
 
     @Override
-    public boolean receivePing(int timestamp, int replicaLastActionTimestamp) throws RemoteException {
+    public void playReplicatedBatch(ReplicationBatch batch) throws RemoteException {
+        backendServer.playReplicatedBatch(batch);
+    }
+
+    @Override
+    public boolean receivePing(long timestamp, long replicaLastActionTimestamp) throws RemoteException {
         return backendServer.receivePing(timestamp, replicaLastActionTimestamp);
     }
 
     @Override
-    public SyncInfo getMissingInfoSinceTimestamp(int lastActionSeenTimestamp) throws RemoteException {
-        return backendServer.getMissingInfoSinceTimestamp(lastActionSeenTimestamp);
+    public SyncInfo getMissingInfoSinceTimestamp(long lastActionSeenTimestamp, int maxActions) throws RemoteException {
+        return backendServer.getMissingInfoSinceTimestamp(lastActionSeenTimestamp, maxActions);
+    }
+
+    @Override
+    public StateChunk getStateChunk(String afterLoginName, int maxRecords) throws RemoteException {
+        return backendServer.getStateChunk(afterLoginName, maxRecords);
+    }
+
+    @Override
+    public StateChunk getChangesSinceTimestamp(long sinceTimestamp) throws RemoteException {
+        return backendServer.getChangesSinceTimestamp(sinceTimestamp);
+    }
+
+    @Override
+    public long[] getMerkleHashes(int[] nodes) throws RemoteException {
+        return backendServer.getMerkleHashes(nodes);
+    }
+
+    @Override
+    public Map<String, LoginInfo> getMerkleLeafRecords(int[] leaves, long expectedLastTimestamp) throws RemoteException {
+        return backendServer.getMerkleLeafRecords(leaves, expectedLastTimestamp);
     }
 
     @Override
-    public void electionAnnounce(int timestamp) throws RemoteException {
+    public void electionAnnounce(long timestamp) throws RemoteException {
         backendServer.electionAnnounce(timestamp);
     }
 
     @Override
-    public void electionResponse(int timestamp) throws RemoteException {
+    public void electionResponse(long timestamp) throws RemoteException {
         backendServer.electionResponse(timestamp);
     }
 
     @Override
-    public void electionVictory(int timestamp) throws RemoteException {
+    public void electionVictory(long timestamp) throws RemoteException {
         backendServer.electionVictory(timestamp);
     }
 
@@ -0,0 +1,117 @@
+package src.Server;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Measures what logging costs the thread handling a CREATE, which logs four clock events and
+ * two debug lines. Compares the old style, where every message was concatenated before the
+ * verbose check and written to the console on the calling thread, against ServerLog, with
+ * debug lines off and on. Lines go to a stream that discards them, so the numbers cover
+ * building and handing off lines rather than the console.
+ *
+ * Usage: $ java src.Server.LoggingBenchmark [numOps]
+ */
+public class LoggingBenchmark {
+    private static final int DEFAULT_NUM_OPS = 200_000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int NUM_NAMES = 1024;
+    private static final String SOURCE = "127.0.0.1";
+
+    private static final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    private static final HybridLogicalClock clock = new HybridLogicalClock();
+    private static final ServerLog log = new ServerLog(discard, 1 << 16);
+    private static final String[] names = new String[NUM_NAMES];
+    private static boolean verbose;
+
+    public static void main(String[] args) {
+        int numOps = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_OPS;
+        for (int i = 0; i < NUM_NAMES; i++) {
+            names[i] = "user" + i;
+        }
+        log.setSource(SOURCE);
+
+        System.out.println("Logging for " + numOps + " CREATEs");
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            boolean measured = round == WARMUP_ROUNDS;
+
+            verbose = false;
+            measure("old style, debug off", numOps, measured, LoggingBenchmark::eagerCreate);
+            verbose = true;
+            measure("old style, debug on", numOps, measured, LoggingBenchmark::eagerCreate);
+            log.setLevel(ServerLog.Level.ERROR);
+            measure("ServerLog, debug off", numOps, measured, LoggingBenchmark::lazyCreate);
+            log.setLevel(ServerLog.Level.TRACE);
+            measure("ServerLog, debug on", numOps, measured, LoggingBenchmark::lazyCreate);
+            log.flush(10_000);
+        }
+        if (log.getDroppedCount() > 0) {
+            System.out.println(log.getDroppedCount() + " lines were dropped because the writer fell behind");
+        }
+    }
+
+    /**
+     * Runs op numOps times and prints its time and allocation per op.
+     */
+    private static void measure(String label, int numOps, boolean measured, LoggedOp op) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long startBytes = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < numOps; i++) {
+            op.run(names[i & (NUM_NAMES - 1)]);
+        }
+        long nanos = System.nanoTime() - start;
+        long bytes = threads.getCurrentThreadAllocatedBytes() - startBytes;
+        if (measured) {
+            System.out.printf("%-22s %9.1f ns/op %9.1f bytes/op%n", label, (double) nanos / numOps, (double) bytes / numOps);
+        }
+    }
+
+    /**
+     * The logging a CREATE used to do: concatenate, then check verbose, then print on this thread.
+     */
+    private static void eagerCreate(String loginName) {
+        eagerDebug(IdServer.GREY_TEXT + "Timestamp @" + clock.tick() + ": " + "Received CREATE from client" + IdServer.NORMAL_TEXT);
+        eagerDebug("Creating user " + loginName);
+        eagerDebug(IdServer.GREY_TEXT + "Timestamp @" + clock.tick() + ": " + "Applied " + ActionObject.ActionKind.CREATE + " action" + IdServer.NORMAL_TEXT);
+        eagerDebug("Created user " + loginName);
+        eagerDebug(IdServer.GREY_TEXT + "Timestamp @" + clock.tick() + ": " + "Completed processing for CREATE" + IdServer.NORMAL_TEXT);
+        eagerDebug(IdServer.GREY_TEXT + "Timestamp @" + clock.tick() + ": " + "Saved action" + IdServer.NORMAL_TEXT);
+    }
+
+    private static void eagerDebug(String message) {
+        if (verbose) {
+            LocalTime realTime = LocalTime.now().truncatedTo(ChronoUnit.MILLIS);
+            discard.println(realTime + " debug " + SOURCE + ": " + message);
+        }
+    }
+
+    /**
+     * The same logging through ServerLog, as IdServer now does it.
+     */
+    private static void lazyCreate(String loginName) {
+        lazyEvent("Received CREATE from client", "");
+        log.debug("Creating user {}", loginName);
+        lazyEvent("Applied action ", ActionObject.ActionKind.CREATE);
+        log.debug("Created user {}", loginName);
+        lazyEvent("Completed processing for CREATE", "");
+        lazyEvent("Saved action", "");
+    }
+
+    private static void lazyEvent(String event, Object detail) {
+        long current = clock.tick();
+        if (log.isEnabled(ServerLog.Level.TRACE)) {
+            log.trace("Timestamp @{}: {}{}", current, event, detail);
+        }
+    }
+
+    /**
+     * one operation's worth of logging
+     */
+    private interface LoggedOp {
+        void run(String loginName);
+    }
+}
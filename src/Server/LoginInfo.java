@@ -10,13 +10,18 @@ import java.util.UUID;
  * and a changeLoginName function.
  */
 public class LoginInfo implements Serializable {
+    // fixed so that adding methods or constructors does not invalidate saved data
+    private static final long serialVersionUID = 1031157849354273353L;
+
     String loginName;
     final UUID uuid;
     final String realName;
     final String creatorIpAddr;
     final Date createdDate;
-    final Date lastChangeDate;
+    Date lastChangeDate;
     final String password;
+    // logical timestamp of the action that last changed this record, or 0 if it is not known
+    volatile long changeStamp;
 
     public LoginInfo(String loginName, String realName, String password, String creatorIpAddr) {
         this.loginName = loginName;
@@ -29,6 +34,45 @@ public class LoginInfo implements Serializable {
 
     }
 
+    /**
+     * Constructor for a record read back from storage, with every field already known
+     *
+     * @param loginName      loginName of the user
+     * @param uuid           uuid assigned when the user was created
+     * @param realName       realName of the user
+     * @param password       password for the user
+     * @param creatorIpAddr  address the user was created from
+     * @param createdDate    when the user was created
+     * @param lastChangeDate when the user was last changed
+     * @param changeStamp    logical timestamp of the action that last changed the user
+     */
+    public LoginInfo(String loginName, UUID uuid, String realName, String password, String creatorIpAddr, Date createdDate, Date lastChangeDate, long changeStamp) {
+        this.loginName = loginName;
+        this.uuid = uuid;
+        this.realName = realName;
+        this.creatorIpAddr = creatorIpAddr;
+        this.createdDate = createdDate;
+        this.lastChangeDate = lastChangeDate;
+        this.password = password;
+        this.changeStamp = changeStamp;
+    }
+
+    /**
+     * Copy constructor, used to keep an unchanging record of a newly created user
+     *
+     * @param other LoginInfo to copy
+     */
+    public LoginInfo(LoginInfo other) {
+        this.loginName = other.loginName;
+        this.uuid = other.uuid;
+        this.realName = other.realName;
+        this.creatorIpAddr = other.creatorIpAddr;
+        this.createdDate = other.createdDate;
+        this.lastChangeDate = other.lastChangeDate;
+        this.password = other.password;
+        this.changeStamp = other.changeStamp;
+    }
+
     /**
      * returns a string representing the user's loginInfo
      *
@@ -46,5 +90,6 @@ public class LoginInfo implements Serializable {
      */
     public void changeLoginName(String newName) {
         this.loginName = newName;
+        this.lastChangeDate = new Date();
     }
 }
@@ -0,0 +1,110 @@
+package src.Server;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Storage engine holding every LoginInfo, keyed by loginName and indexed by UUID.
+ * All implementations are safe to use from many threads at once.
+ */
+public interface LoginStore {
+    /**
+     * @param loginName loginName of desired user
+     * @return the user's record, or null if there is none
+     */
+    LoginInfo get(String loginName);
+
+    /**
+     * @param uuid uuid of desired user
+     * @return the user's record, or null if there is none
+     */
+    LoginInfo getByUuid(UUID uuid);
+
+    /**
+     * @param loginName loginName to check
+     * @return true if a user with this loginName exists
+     */
+    boolean containsKey(String loginName);
+
+    /**
+     * Adds a record under its loginName, replacing any record already there.
+     *
+     * @param info record to add
+     * @throws IllegalArgumentException the record cannot be represented by this store
+     */
+    void put(LoginInfo info);
+
+    /**
+     * Adds a record under its loginName only if no record is there, as one atomic step.
+     *
+     * @param info record to add
+     * @return true if it was added, false if the loginName was taken
+     * @throws IllegalArgumentException the record cannot be represented by this store
+     */
+    boolean putIfAbsent(LoginInfo info);
+
+    /**
+     * Moves a record to a new loginName, keeping everything else about it. Readers never
+     * see the record missing from both names, though they may briefly see it under both.
+     *
+     * @param oldLoginName current loginName of an existing user
+     * @param newLoginName unused loginName to move it to
+     * @throws IllegalArgumentException the new name cannot be represented by this store
+     */
+    void rename(String oldLoginName, String newLoginName);
+
+    /**
+     * Records the logical timestamp of the action that last changed a user, if it exists.
+     *
+     * @param loginName   loginName of the changed user
+     * @param changeStamp timestamp of the change
+     */
+    void setChangeStamp(String loginName, long changeStamp);
+
+    /**
+     * @param loginName loginName of user to remove
+     * @return the removed record, or null if there was none
+     */
+    LoginInfo remove(String loginName);
+
+    /**
+     * @return number of users stored
+     */
+    int size();
+
+    /**
+     * Passes every record to action, in no particular order.
+     *
+     * @param action receives each record
+     */
+    void forEach(Consumer<LoginInfo> action);
+
+    /**
+     * Replaces every record with the contents of data.
+     *
+     * @param data records keyed by loginName
+     */
+    void replaceAll(Map<String, LoginInfo> data);
+
+    /**
+     * Returns every record as a map keyed by loginName. Stores that already keep such a map
+     * return it directly, so callers must not modify the result.
+     *
+     * @return records keyed by loginName
+     */
+    Map<String, LoginInfo> asMap();
+
+    /**
+     * @return true if the store keeps its records on disk itself, so it does not need snapshots
+     */
+    boolean isPersistent();
+
+    /**
+     * Forces every change made so far to disk. Does nothing for stores that are not persistent.
+     *
+     * @throws IOException changes could not be written
+     */
+    void flush() throws IOException;
+}
@@ -0,0 +1,575 @@
+package src.Server;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * LoginStore keeping every record off the heap, in fixed-size slots of a memory-mapped file.
+ * The slots form an open-addressing hash table keyed by loginName, and a second table of slot
+ * numbers in the same file indexes them by UUID. Because the file is already in the format
+ * used to serve requests, reopening it after a restart costs no loading at all.
+ *
+ * File layout: a header, then capacity record slots, then capacity UUID index entries.
+ * Strings are stored as a length (-1 for null) followed by UTF-8 bytes, in fields of fixed
+ * size; records whose strings do not fit are rejected.
+ */
+public class MappedLoginStore implements LoginStore {
+    private static final int MAGIC = 0x49445331;
+    private static final int VERSION = 2;
+    // version 1 stored changeStamp as an int in the same place
+    private static final int INT_CHANGE_STAMP_VERSION = 1;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final double MAX_LOAD = 0.7;
+
+    // header layout
+    private static final int HEADER_BYTES = 64;
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_CAPACITY = 8;
+    private static final int HEADER_SIZE = 12;
+    private static final int HEADER_USED_SLOTS = 16;
+    private static final int HEADER_USED_UUID_ENTRIES = 20;
+
+    // record layout
+    private static final int RECORD_BYTES = 512;
+    private static final int STATE = 0;
+    private static final int NAME_HASH = 4;
+    private static final int UUID_MOST = 8;
+    private static final int UUID_LEAST = 16;
+    private static final int CREATED_DATE = 24;
+    private static final int LAST_CHANGE_DATE = 32;
+    private static final int LOGIN_NAME = 40;
+    private static final int LOGIN_NAME_BYTES = 64;
+    private static final int REAL_NAME = LOGIN_NAME + LOGIN_NAME_BYTES;
+    private static final int REAL_NAME_BYTES = 160;
+    private static final int CREATOR_IP = REAL_NAME + REAL_NAME_BYTES;
+    private static final int CREATOR_IP_BYTES = 64;
+    private static final int PASSWORD = CREATOR_IP + CREATOR_IP_BYTES;
+    private static final int PASSWORD_BYTES = 160;
+    private static final int CHANGE_STAMP = PASSWORD + PASSWORD_BYTES;
+
+    private static final byte SLOT_EMPTY = 0;
+    private static final byte SLOT_LIVE = 1;
+    private static final byte SLOT_DELETED = 2;
+
+    // UUID index entries hold slot + 1, so 0 can mean empty
+    private static final int UUID_ENTRY_EMPTY = 0;
+    private static final int UUID_ENTRY_DELETED = -1;
+
+    // record slots are mapped in chunks so the file can grow past what one mapping can cover
+    private static final int CHUNK_SHIFT = 20;
+    private static final int RECORDS_PER_CHUNK = 1 << CHUNK_SHIFT;
+
+    private final Path path;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int capacity;
+    private MappedByteBuffer header;
+    private MappedByteBuffer[] recordChunks;
+    private MappedByteBuffer uuidEntries;
+
+    public MappedLoginStore(String path) throws IOException {
+        this.path = Paths.get(path);
+        if (Files.exists(this.path)) {
+            map(this.path);
+            if (header.getInt(HEADER_MAGIC) != MAGIC) {
+                throw new IOException("Unrecognized record store file " + path);
+            } else if (header.getInt(HEADER_VERSION) == INT_CHANGE_STAMP_VERSION) {
+                widenChangeStamps();
+            } else if (header.getInt(HEADER_VERSION) != VERSION) {
+                throw new IOException("Unrecognized record store file " + path);
+            }
+        } else {
+            initialize(this.path, INITIAL_CAPACITY);
+            map(this.path);
+        }
+    }
+
+    @Override
+    public LoginInfo get(String loginName) {
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(loginName);
+            return slot < 0 ? null : readRecord(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public LoginInfo getByUuid(UUID uuid) {
+        lock.readLock().lock();
+        try {
+            int entry = findUuidEntry(uuid);
+            return entry < 0 ? null : readRecord(uuidEntries.getInt(entry * Integer.BYTES) - 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(String loginName) {
+        lock.readLock().lock();
+        try {
+            return findSlot(loginName) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(LoginInfo info) {
+        checkFits(info);
+        lock.writeLock().lock();
+        try {
+            removeRecord(info.loginName);
+            insertRecord(info);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean putIfAbsent(LoginInfo info) {
+        checkFits(info);
+        lock.writeLock().lock();
+        try {
+            if (findSlot(info.loginName) >= 0) {
+                return false;
+            }
+            insertRecord(info);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void rename(String oldLoginName, String newLoginName) {
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(oldLoginName);
+            if (slot < 0) {
+                return;
+            }
+            LoginInfo info = readRecord(slot);
+            info.changeLoginName(newLoginName);
+            checkFits(info);
+            removeRecord(oldLoginName);
+            insertRecord(info);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void setChangeStamp(String loginName, long changeStamp) {
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(loginName);
+            if (slot >= 0) {
+                recordBuffer(slot).putLong(recordOffset(slot) + CHANGE_STAMP, changeStamp);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public LoginInfo remove(String loginName) {
+        lock.writeLock().lock();
+        try {
+            return removeRecord(loginName);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return header.getInt(HEADER_SIZE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<LoginInfo> action) {
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < capacity; slot++) {
+                if (recordBuffer(slot).get(recordOffset(slot) + STATE) == SLOT_LIVE) {
+                    action.accept(readRecord(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void replaceAll(Map<String, LoginInfo> data) {
+        for (LoginInfo info : data.values()) {
+            checkFits(info);
+        }
+        lock.writeLock().lock();
+        try {
+            rebuild(capacityFor(data.size()), data.values());
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not rebuild record store " + path, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, LoginInfo> asMap() {
+        Map<String, LoginInfo> copy = new HashMap<>();
+        forEach(info -> copy.put(info.loginName, info));
+        return copy;
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    @Override
+    public void flush() {
+        lock.readLock().lock();
+        try {
+            for (MappedByteBuffer chunk : recordChunks) {
+                chunk.force();
+            }
+            uuidEntries.force();
+            header.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the live slot holding a loginName. Caller must hold the lock.
+     *
+     * @param loginName loginName to find
+     * @return its slot, or -1 if it is not stored
+     */
+    private int findSlot(String loginName) {
+        byte[] nameBytes = loginName.getBytes(StandardCharsets.UTF_8);
+        int hash = spread(loginName.hashCode());
+        int mask = capacity - 1;
+        for (int probe = 0, slot = hash & mask; probe < capacity; probe++, slot = (slot + 1) & mask) {
+            MappedByteBuffer buffer = recordBuffer(slot);
+            int offset = recordOffset(slot);
+            byte state = buffer.get(offset + STATE);
+            if (state == SLOT_EMPTY) {
+                return -1;
+            }
+            if (state == SLOT_LIVE && buffer.getInt(offset + NAME_HASH) == hash && stringEquals(buffer, offset + LOGIN_NAME, nameBytes)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the UUID index entry pointing at the live record with a uuid. Caller must hold the lock.
+     *
+     * @param uuid uuid to find
+     * @return its index entry, or -1 if it is not stored
+     */
+    private int findUuidEntry(UUID uuid) {
+        int mask = capacity - 1;
+        for (int probe = 0, entry = spread(uuid.hashCode()) & mask; probe < capacity; probe++, entry = (entry + 1) & mask) {
+            int value = uuidEntries.getInt(entry * Integer.BYTES);
+            if (value == UUID_ENTRY_EMPTY) {
+                return -1;
+            }
+            if (value != UUID_ENTRY_DELETED) {
+                int slot = value - 1;
+                MappedByteBuffer buffer = recordBuffer(slot);
+                int offset = recordOffset(slot);
+                if (buffer.getLong(offset + UUID_MOST) == uuid.getMostSignificantBits() && buffer.getLong(offset + UUID_LEAST) == uuid.getLeastSignificantBits()) {
+                    return entry;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes a record whose loginName is not already stored, growing the table first if
+     * needed. Caller must hold the write lock.
+     *
+     * @param info record to write
+     */
+    private void insertRecord(LoginInfo info) {
+        int usedSlots = header.getInt(HEADER_USED_SLOTS);
+        int usedUuidEntries = header.getInt(HEADER_USED_UUID_ENTRIES);
+        if (Math.max(usedSlots, usedUuidEntries) + 1 > capacity * MAX_LOAD) {
+            try {
+                growOrCompact();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not grow record store " + path, e);
+            }
+        }
+
+        // take the first deleted or empty slot along the probe sequence
+        int hash = spread(info.loginName.hashCode());
+        int mask = capacity - 1;
+        int slot = hash & mask;
+        while (recordBuffer(slot).get(recordOffset(slot) + STATE) == SLOT_LIVE) {
+            slot = (slot + 1) & mask;
+        }
+        if (recordBuffer(slot).get(recordOffset(slot) + STATE) == SLOT_EMPTY) {
+            header.putInt(HEADER_USED_SLOTS, header.getInt(HEADER_USED_SLOTS) + 1);
+        }
+        writeRecord(slot, hash, info);
+
+        int entry = spread(info.uuid.hashCode()) & mask;
+        int value;
+        while ((value = uuidEntries.getInt(entry * Integer.BYTES)) != UUID_ENTRY_EMPTY && value != UUID_ENTRY_DELETED) {
+            entry = (entry + 1) & mask;
+        }
+        if (value == UUID_ENTRY_EMPTY) {
+            header.putInt(HEADER_USED_UUID_ENTRIES, header.getInt(HEADER_USED_UUID_ENTRIES) + 1);
+        }
+        uuidEntries.putInt(entry * Integer.BYTES, slot + 1);
+        header.putInt(HEADER_SIZE, header.getInt(HEADER_SIZE) + 1);
+    }
+
+    /**
+     * Marks a record and its UUID index entry deleted. Caller must hold the write lock.
+     *
+     * @param loginName loginName of record to remove
+     * @return the removed record, or null if there was none
+     */
+    private LoginInfo removeRecord(String loginName) {
+        int slot = findSlot(loginName);
+        if (slot < 0) {
+            return null;
+        }
+        LoginInfo info = readRecord(slot);
+        int entry = findUuidEntry(info.uuid);
+        if (entry >= 0) {
+            uuidEntries.putInt(entry * Integer.BYTES, UUID_ENTRY_DELETED);
+        }
+        recordBuffer(slot).put(recordOffset(slot) + STATE, SLOT_DELETED);
+        header.putInt(HEADER_SIZE, header.getInt(HEADER_SIZE) - 1);
+        return info;
+    }
+
+    /**
+     * Rebuilds the table without deleted slots, doubling its capacity if it is still too
+     * full once they are gone. Caller must hold the write lock.
+     *
+     * @throws IOException the new file could not be written
+     */
+    private void growOrCompact() throws IOException {
+        List<LoginInfo> live = new ArrayList<>(header.getInt(HEADER_SIZE));
+        for (int slot = 0; slot < capacity; slot++) {
+            if (recordBuffer(slot).get(recordOffset(slot) + STATE) == SLOT_LIVE) {
+                live.add(readRecord(slot));
+            }
+        }
+        rebuild(Math.max(capacity, capacityFor(live.size() + 1)), live);
+    }
+
+    /**
+     * Writes records into a fresh file of the given capacity and swaps it in for the current
+     * one. Caller must hold the write lock.
+     *
+     * @param newCapacity number of slots in the new file (a power of two)
+     * @param records     records to write into it
+     * @throws IOException the new file could not be written
+     */
+    private void rebuild(int newCapacity, Iterable<LoginInfo> records) throws IOException {
+        Path tempPath = Paths.get(path + ".tmp");
+        initialize(tempPath, newCapacity);
+        map(tempPath);
+        for (LoginInfo info : records) {
+            insertRecord(info);
+        }
+        flush();
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Upgrades a version 1 file in place by rewriting each record's int changeStamp as a long.
+     */
+    private void widenChangeStamps() {
+        for (int slot = 0; slot < capacity; slot++) {
+            MappedByteBuffer buffer = recordBuffer(slot);
+            int offset = recordOffset(slot);
+            if (buffer.get(offset + STATE) == SLOT_LIVE) {
+                buffer.putLong(offset + CHANGE_STAMP, buffer.getInt(offset + CHANGE_STAMP));
+            }
+        }
+        header.putInt(HEADER_VERSION, VERSION);
+    }
+
+    /**
+     * Creates an empty store file of the given capacity.
+     *
+     * @param filePath    where to create it
+     * @param newCapacity number of slots (a power of two)
+     * @throws IOException the file could not be created
+     */
+    private static void initialize(Path filePath, int newCapacity) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filePath.toFile(), "rw")) {
+            file.setLength(0);
+            file.setLength(HEADER_BYTES + (long) newCapacity * RECORD_BYTES + (long) newCapacity * Integer.BYTES);
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            file.writeInt(newCapacity);
+        }
+    }
+
+    /**
+     * Maps the header, record slots and UUID index of a store file.
+     *
+     * @param filePath file to map
+     * @throws IOException the file could not be mapped
+     */
+    private void map(Path filePath) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filePath.toFile(), "rw")) {
+            FileChannel channel = file.getChannel();
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            capacity = header.getInt(HEADER_CAPACITY);
+
+            int chunks = (capacity + RECORDS_PER_CHUNK - 1) / RECORDS_PER_CHUNK;
+            recordChunks = new MappedByteBuffer[chunks];
+            for (int i = 0; i < chunks; i++) {
+                long chunkSlots = Math.min(RECORDS_PER_CHUNK, capacity - (long) i * RECORDS_PER_CHUNK);
+                recordChunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + (long) i * RECORDS_PER_CHUNK * RECORD_BYTES, chunkSlots * RECORD_BYTES);
+            }
+            uuidEntries = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + (long) capacity * RECORD_BYTES, (long) capacity * Integer.BYTES);
+        }
+    }
+
+    private MappedByteBuffer recordBuffer(int slot) {
+        return recordChunks[slot >>> CHUNK_SHIFT];
+    }
+
+    private static int recordOffset(int slot) {
+        return (slot & (RECORDS_PER_CHUNK - 1)) * RECORD_BYTES;
+    }
+
+    private LoginInfo readRecord(int slot) {
+        MappedByteBuffer buffer = recordBuffer(slot);
+        int offset = recordOffset(slot);
+        return new LoginInfo(
+                readString(buffer, offset + LOGIN_NAME),
+                new UUID(buffer.getLong(offset + UUID_MOST), buffer.getLong(offset + UUID_LEAST)),
+                readString(buffer, offset + REAL_NAME),
+                readString(buffer, offset + PASSWORD),
+                readString(buffer, offset + CREATOR_IP),
+                new Date(buffer.getLong(offset + CREATED_DATE)),
+                new Date(buffer.getLong(offset + LAST_CHANGE_DATE)),
+                buffer.getLong(offset + CHANGE_STAMP));
+    }
+
+    private void writeRecord(int slot, int nameHash, LoginInfo info) {
+        MappedByteBuffer buffer = recordBuffer(slot);
+        int offset = recordOffset(slot);
+        buffer.putInt(offset + NAME_HASH, nameHash);
+        buffer.putLong(offset + UUID_MOST, info.uuid.getMostSignificantBits());
+        buffer.putLong(offset + UUID_LEAST, info.uuid.getLeastSignificantBits());
+        buffer.putLong(offset + CREATED_DATE, info.createdDate.getTime());
+        buffer.putLong(offset + LAST_CHANGE_DATE, info.lastChangeDate.getTime());
+        buffer.putLong(offset + CHANGE_STAMP, info.changeStamp);
+        writeString(buffer, offset + LOGIN_NAME, info.loginName);
+        writeString(buffer, offset + REAL_NAME, info.realName);
+        writeString(buffer, offset + CREATOR_IP, info.creatorIpAddr);
+        writeString(buffer, offset + PASSWORD, info.password);
+        // publish the slot only once every field is in place
+        buffer.put(offset + STATE, SLOT_LIVE);
+    }
+
+    private static String readString(MappedByteBuffer buffer, int offset) {
+        short length = buffer.getShort(offset);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + Short.BYTES + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(MappedByteBuffer buffer, int offset, String value) {
+        if (value == null) {
+            buffer.putShort(offset, (short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort(offset, (short) bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.put(offset + Short.BYTES + i, bytes[i]);
+        }
+    }
+
+    private static boolean stringEquals(MappedByteBuffer buffer, int offset, byte[] expected) {
+        if (buffer.getShort(offset) != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer.get(offset + Short.BYTES + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks that every string of a record fits in its fixed-size field.
+     *
+     * @param info record to check
+     * @throws IllegalArgumentException some field is too long
+     */
+    private static void checkFits(LoginInfo info) {
+        checkFits(info.loginName, LOGIN_NAME_BYTES, "loginName");
+        checkFits(info.realName, REAL_NAME_BYTES, "realName");
+        checkFits(info.creatorIpAddr, CREATOR_IP_BYTES, "creatorIpAddr");
+        checkFits(info.password, PASSWORD_BYTES, "password");
+    }
+
+    private static void checkFits(String value, int fieldBytes, String fieldName) {
+        if (value != null && value.getBytes(StandardCharsets.UTF_8).length > fieldBytes - Short.BYTES) {
+            throw new IllegalArgumentException(fieldName + " is longer than " + (fieldBytes - Short.BYTES) + " bytes");
+        }
+    }
+
+    /**
+     * @param records number of records to hold
+     * @return smallest power-of-two capacity keeping them under half full
+     */
+    private static int capacityFor(int records) {
+        int newCapacity = INITIAL_CAPACITY;
+        while (records > newCapacity / 2) {
+            newCapacity *= 2;
+        }
+        return newCapacity;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
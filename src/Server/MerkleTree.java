@@ -0,0 +1,124 @@
+package src.Server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hash tree over loginData, used to find which parts of two replicas' data differ without
+ * comparing every record. loginNames are spread over a fixed number of leaves by hash; each
+ * leaf's hash combines the hashes of every record in it, and each inner node's hash combines
+ * its two children. Nodes are numbered from 1 at the root, with the children of node i at
+ * 2i and 2i+1, so the leaves are nodes LEAF_COUNT through 2 * LEAF_COUNT - 1.
+ * Updates cost one pass from a leaf up to the root.
+ */
+public class MerkleTree {
+    public static final int LEAF_COUNT = 1024;
+
+    private final long[] nodes = new long[2 * LEAF_COUNT];
+    // loginNames in each leaf, so the records behind a differing leaf can be listed
+    private final List<Set<String>> leafNames = new ArrayList<>(LEAF_COUNT);
+
+    public MerkleTree() {
+        for (int i = 0; i < LEAF_COUNT; i++) {
+            leafNames.add(ConcurrentHashMap.newKeySet());
+        }
+        for (int node = LEAF_COUNT - 1; node >= 1; node--) {
+            nodes[node] = combine(nodes[2 * node], nodes[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Adds a record to its leaf. The record must not already be in the tree.
+     *
+     * @param info record to add
+     */
+    public void add(LoginInfo info) {
+        int leaf = leafOf(info.loginName);
+        leafNames.get(leaf).add(info.loginName);
+        toggle(leaf, hashOf(info));
+    }
+
+    /**
+     * Removes a record from its leaf. Must be passed the record as it was added.
+     *
+     * @param info record to remove
+     */
+    public void remove(LoginInfo info) {
+        int leaf = leafOf(info.loginName);
+        leafNames.get(leaf).remove(info.loginName);
+        toggle(leaf, hashOf(info));
+    }
+
+    /**
+     * @param node node number, from 1 for the root
+     * @return hash of that node
+     */
+    public synchronized long hashOf(int node) {
+        return nodes[node];
+    }
+
+    /**
+     * @param leaf leaf number, from 0 to LEAF_COUNT - 1
+     * @return loginNames currently in that leaf
+     */
+    public Set<String> namesIn(int leaf) {
+        return leafNames.get(leaf);
+    }
+
+    /**
+     * @param loginName loginName to place
+     * @return number of the leaf, from 0 to LEAF_COUNT - 1, holding that loginName
+     */
+    public static int leafOf(String loginName) {
+        return (int) Long.remainderUnsigned(mix(loginName.hashCode()), LEAF_COUNT);
+    }
+
+    /**
+     * Hashes every field of a record, so any difference between two copies shows up.
+     *
+     * @param info record to hash
+     * @return 64-bit hash
+     */
+    public static long hashOf(LoginInfo info) {
+        long hash = mix(Objects.hashCode(info.loginName));
+        hash = mix(hash ^ info.uuid.getMostSignificantBits());
+        hash = mix(hash ^ info.uuid.getLeastSignificantBits());
+        hash = mix(hash ^ Objects.hashCode(info.realName));
+        hash = mix(hash ^ Objects.hashCode(info.password));
+        hash = mix(hash ^ Objects.hashCode(info.creatorIpAddr));
+        hash = mix(hash ^ (info.createdDate == null ? 0 : info.createdDate.getTime()));
+        hash = mix(hash ^ (info.lastChangeDate == null ? 0 : info.lastChangeDate.getTime()));
+        return hash;
+    }
+
+    /**
+     * Flips a record hash in or out of a leaf (leaf hashes are the XOR of their records,
+     * so adding and removing are the same operation), then rehashes the path to the root.
+     */
+    private synchronized void toggle(int leaf, long recordHash) {
+        int node = LEAF_COUNT + leaf;
+        nodes[node] ^= recordHash;
+        for (node /= 2; node >= 1; node /= 2) {
+            nodes[node] = combine(nodes[2 * node], nodes[2 * node + 1]);
+        }
+    }
+
+    private static long combine(long left, long right) {
+        return mix(left * 31 + mix(right));
+    }
+
+    /**
+     * Scrambles the bits of a value (the finalizer of MurmurHash3).
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
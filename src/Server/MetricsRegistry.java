@@ -0,0 +1,129 @@
+package src.Server;
+
+import src.Common.ErrorType;
+import src.Common.MetricsSnapshot;
+import src.Common.ServerResponse;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Named latency histograms, counters and gauges for one server. Looking a metric up by name
+ * creates it on first use, so callers on hot paths should look it up once and keep it.
+ * Recording never locks: histograms and counters are updated with atomic adds, and gauges
+ * are only read when a snapshot is taken.
+ */
+public class MetricsRegistry {
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+    /**
+     * @param name name of the histogram
+     * @return the histogram, created if this is the first use of name
+     */
+    public LatencyHistogram latency(String name) {
+        return latencies.computeIfAbsent(name, ignored -> new LatencyHistogram());
+    }
+
+    /**
+     * @param name name of the counter
+     * @return the counter, created at 0 if this is the first use of name
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, ignored -> new LongAdder());
+    }
+
+    /**
+     * Registers a value read whenever a snapshot is taken, replacing any earlier gauge of that name.
+     *
+     * @param name  name of the gauge
+     * @param value reads the gauge's current value; must be safe to call from any thread
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * @param name name of a client-facing operation, such as "create"
+     * @return latency and error counts for the operation, created if this is the first use of name
+     */
+    public Operation operation(String name) {
+        return operations.computeIfAbsent(name, Operation::new);
+    }
+
+    /**
+     * @param serverName name to label the snapshot with
+     * @return every metric's value right now
+     */
+    public MetricsSnapshot snapshot(String serverName) {
+        Map<String, MetricsSnapshot.Latency> latencySnapshots = new HashMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+            latencySnapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        Map<String, Long> values = new HashMap<>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().sum());
+        }
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().getAsLong());
+        }
+        return new MetricsSnapshot(serverName, System.currentTimeMillis(), latencySnapshots, values);
+    }
+
+    /**
+     * Latency of one client-facing operation, and how many of its responses carried each ErrorType
+     */
+    public class Operation {
+        private final LatencyHistogram latency;
+        private final LongAdder[] errorCounts = new LongAdder[ErrorType.values().length];
+        private final LongAdder exceptions;
+
+        private Operation(String name) {
+            latency = latency(name);
+            for (ErrorType error : ErrorType.values()) {
+                errorCounts[error.ordinal()] = counter(name + "." + error);
+            }
+            exceptions = counter(name + ".EXCEPTION");
+        }
+
+        /**
+         * Records one call that returned.
+         *
+         * @param startNanos System.nanoTime() when the call began
+         * @param result     what the call returned: a response, or a list of responses for a batch
+         */
+        public void record(long startNanos, Object result) {
+            latency.recordSince(startNanos);
+            if (result instanceof ServerResponse) {
+                countError((ServerResponse) result);
+            } else if (result instanceof List) {
+                for (Object response : (List<?>) result) {
+                    if (response instanceof ServerResponse) {
+                        countError((ServerResponse) response);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Records one call that threw instead of returning.
+         *
+         * @param startNanos System.nanoTime() when the call began
+         */
+        public void recordException(long startNanos) {
+            latency.recordSince(startNanos);
+            exceptions.increment();
+        }
+
+        private void countError(ServerResponse response) {
+            ErrorType error = response.error == null ? ErrorType.NONE : response.error;
+            errorCounts[error.ordinal()].increment();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package src.Server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Index from every n-gram (substring of length GRAM_LENGTH) of a login name to the
+ * sorted set of login names containing it. A substring search only walks the posting
+ * set of the query's rarest n-gram, so its cost follows the number of candidate names
+ * rather than the size of the whole table.
+ */
+public class NgramIndex {
+    public static final int GRAM_LENGTH = 3;
+
+    private final ConcurrentHashMap<String, Postings> postings = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a login name under each of its n-grams.
+     *
+     * @param loginName name to index
+     */
+    public void add(String loginName) {
+        for (String gram : gramsOf(loginName)) {
+            postings.compute(gram, (key, existing) -> {
+                Postings entry = (existing == null) ? new Postings() : existing;
+                if (entry.names.add(loginName)) {
+                    entry.size++;
+                }
+                return entry;
+            });
+        }
+    }
+
+    /**
+     * Removes a login name from each of its n-grams, dropping n-grams no name uses anymore.
+     *
+     * @param loginName name to remove
+     */
+    public void remove(String loginName) {
+        for (String gram : gramsOf(loginName)) {
+            postings.computeIfPresent(gram, (key, entry) -> {
+                if (entry.names.remove(loginName)) {
+                    entry.size--;
+                }
+                return entry.size == 0 ? null : entry;
+            });
+        }
+    }
+
+    /**
+     * Removes every name from the index.
+     */
+    public void clear() {
+        postings.clear();
+    }
+
+    /**
+     * Returns whether a query is long enough to be answered from this index.
+     *
+     * @param substring search text
+     * @return true if substring has at least one full n-gram
+     */
+    public static boolean canSearch(String substring) {
+        return substring.length() >= GRAM_LENGTH;
+    }
+
+    /**
+     * Finds login names containing substring, in sorted order, starting after a cursor.
+     *
+     * @param substring text the names must contain; must satisfy canSearch
+     * @param afterName only names sorting after this one are returned, or null to start at the beginning
+     * @param limit     maximum number of names to return
+     * @return matching names, at most limit of them
+     */
+    public List<String> search(String substring, String afterName, int limit) {
+        // candidates are the names sharing the query's rarest n-gram
+        Postings rarest = null;
+        for (String gram : gramsOf(substring)) {
+            Postings entry = postings.get(gram);
+            if (entry == null) {
+                return new ArrayList<>();
+            }
+            if (rarest == null || entry.size < rarest.size) {
+                rarest = entry;
+            }
+        }
+
+        NavigableSet<String> candidates = (afterName == null) ? rarest.names : rarest.names.tailSet(afterName, false);
+        List<String> matches = new ArrayList<>();
+        for (String candidate : candidates) {
+            if (matches.size() == limit) {
+                break;
+            }
+            if (candidate.contains(substring)) {
+                matches.add(candidate);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Splits a string into its distinct n-grams.
+     *
+     * @param text string to split
+     * @return each n-gram of text once
+     */
+    private static List<String> gramsOf(String text) {
+        List<String> grams = new ArrayList<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            String gram = text.substring(i, i + GRAM_LENGTH);
+            if (!grams.contains(gram)) {
+                grams.add(gram);
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * Names sharing one n-gram. size is only changed inside ConcurrentHashMap.compute
+     * for the owning key, and is kept so the rarest n-gram can be picked without counting.
+     */
+    private static class Postings {
+        final ConcurrentSkipListSet<String> names = new ConcurrentSkipListSet<>();
+        volatile int size = 0;
+    }
+}
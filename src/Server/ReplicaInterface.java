@@ -2,6 +2,7 @@ package src.Server;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.Map;
 
 /**
  * Interface for RMI communication between servers.
@@ -9,17 +10,27 @@ import java.rmi.RemoteException;
  * @author Anna Rift
  */
 public interface ReplicaInterface extends Remote {
-    void playReplicatedAction(ActionObject action, int timestamp, int expectedLastTimestamp) throws RemoteException;
+    void playReplicatedAction(ActionObject action, long timestamp, long expectedLastTimestamp) throws RemoteException;
 
-    boolean receivePing(int timestamp, int replicaLastActionTimestamp) throws RemoteException;
+    void playReplicatedBatch(ReplicationBatch batch) throws RemoteException;
 
-    SyncInfo getMissingInfoSinceTimestamp(int lastActionSeenTimestamp) throws RemoteException;
+    boolean receivePing(long timestamp, long replicaLastActionTimestamp) throws RemoteException;
 
-    void electionAnnounce(int timestamp) throws RemoteException;
+    SyncInfo getMissingInfoSinceTimestamp(long lastActionSeenTimestamp, int maxActions) throws RemoteException;
 
-    void electionResponse(int timestamp) throws RemoteException;
+    StateChunk getStateChunk(String afterLoginName, int maxRecords) throws RemoteException;
 
-    void electionVictory(int timestamp) throws RemoteException;
+    StateChunk getChangesSinceTimestamp(long sinceTimestamp) throws RemoteException;
+
+    long[] getMerkleHashes(int[] nodes) throws RemoteException;
+
+    Map<String, LoginInfo> getMerkleLeafRecords(int[] leaves, long expectedLastTimestamp) throws RemoteException;
+
+    void electionAnnounce(long timestamp) throws RemoteException;
+
+    void electionResponse(long timestamp) throws RemoteException;
+
+    void electionVictory(long timestamp) throws RemoteException;
 
     String getPreviousCoordinatorAddress() throws RemoteException;
 }
@@ -0,0 +1,40 @@
+package src.Server;
+
+import java.io.Serializable;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Consecutive actions sent to a replica in one call. The replica applies them together,
+ * provided the last action it has seen is the one this batch follows.
+ */
+public class ReplicationBatch implements Serializable {
+    // actions keyed by timestamp, with no gaps between them
+    public final SortedMap<Long, ActionObject> actions = new TreeMap<>();
+    // timestamp of the action this batch follows
+    public final long expectedLastTimestamp;
+    public long firstTimestamp = -1;
+    public long lastTimestamp = -1;
+
+    public ReplicationBatch(long expectedLastTimestamp) {
+        this.expectedLastTimestamp = expectedLastTimestamp;
+    }
+
+    /**
+     * Adds the next action to the batch
+     *
+     * @param timestamp timestamp of action
+     * @param action    action to add
+     */
+    public void add(long timestamp, ActionObject action) {
+        if (actions.isEmpty()) {
+            firstTimestamp = timestamp;
+        }
+        actions.put(timestamp, action);
+        lastTimestamp = timestamp;
+    }
+
+    public int size() {
+        return actions.size();
+    }
+}
@@ -0,0 +1,135 @@
+package src.Server;
+
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Map;
+
+/**
+ * Compares the throughput of copying actions to a replica with one RMI call per action
+ * against sending them in batches with playReplicatedBatch. The replica is a local stub
+ * that only counts what it receives, so the numbers measure the cost of the calls themselves.
+ *
+ * Usage: $ java src.Server.ReplicationBenchmark [numActions] [batchSize] [port]
+ */
+public class ReplicationBenchmark {
+    private static final int DEFAULT_NUM_ACTIONS = 20_000;
+    private static final int DEFAULT_BATCH_SIZE = 64;
+    private static final int DEFAULT_PORT = 5190;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final String REMOTE_NAME = "ReplicationBenchmark";
+
+    public static void main(String[] args) throws Exception {
+        int numActions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_ACTIONS;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BATCH_SIZE;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PORT;
+
+        CountingReplica replica = new CountingReplica();
+        Registry registry = LocateRegistry.createRegistry(port);
+        registry.rebind(REMOTE_NAME, UnicastRemoteObject.exportObject(replica, 0));
+        ReplicaInterface stub = (ReplicaInterface) LocateRegistry.getRegistry("localhost", port).lookup(REMOTE_NAME);
+
+        ActionObject[] actions = new ActionObject[numActions];
+        for (int i = 0; i < numActions; i++) {
+            actions[i] = new ActionObject(ActionObject.ActionKind.CREATE, "user" + i, "password", "User " + i);
+        }
+
+        System.out.println("Replicating " + numActions + " actions to a local replica");
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            boolean measured = round == WARMUP_ROUNDS;
+
+            replica.received = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < numActions; i++) {
+                stub.playReplicatedAction(actions[i], i + 1, i);
+            }
+            long singleNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < numActions; i += batchSize) {
+                ReplicationBatch batch = new ReplicationBatch(i);
+                for (int j = i; j < Math.min(i + batchSize, numActions); j++) {
+                    batch.add(j + 1, actions[j]);
+                }
+                stub.playReplicatedBatch(batch);
+            }
+            long batchedNanos = System.nanoTime() - start;
+
+            if (replica.received != 2 * numActions) {
+                throw new IllegalStateException("Replica did not receive every action");
+            }
+            if (measured) {
+                System.out.printf("one call per action: %,10.0f actions/s%n", numActions / (singleNanos / 1e9));
+                System.out.printf("batches of %-4d      %,10.0f actions/s%n", batchSize, numActions / (batchedNanos / 1e9));
+            }
+        }
+
+        UnicastRemoteObject.unexportObject(replica, true);
+        UnicastRemoteObject.unexportObject(registry, true);
+    }
+
+    /**
+     * Replica that accepts replicated actions and counts them
+     */
+    private static class CountingReplica implements ReplicaInterface {
+        volatile int received = 0;
+
+        @Override
+        public void playReplicatedAction(ActionObject action, long timestamp, long expectedLastTimestamp) {
+            received++;
+        }
+
+        @Override
+        public void playReplicatedBatch(ReplicationBatch batch) {
+            received += batch.size();
+        }
+
+        @Override
+        public boolean receivePing(long timestamp, long replicaLastActionTimestamp) {
+            return true;
+        }
+
+        @Override
+        public SyncInfo getMissingInfoSinceTimestamp(long lastActionSeenTimestamp, int maxActions) {
+            return null;
+        }
+
+        @Override
+        public StateChunk getStateChunk(String afterLoginName, int maxRecords) {
+            return null;
+        }
+
+        @Override
+        public StateChunk getChangesSinceTimestamp(long sinceTimestamp) {
+            return null;
+        }
+
+        @Override
+        public long[] getMerkleHashes(int[] nodes) {
+            return new long[nodes.length];
+        }
+
+        @Override
+        public Map<String, LoginInfo> getMerkleLeafRecords(int[] leaves, long expectedLastTimestamp) {
+            return null;
+        }
+
+        @Override
+        public void electionAnnounce(long timestamp) {
+        }
+
+        @Override
+        public void electionResponse(long timestamp) {
+        }
+
+        @Override
+        public void electionVictory(long timestamp) {
+        }
+
+        @Override
+        public String getPreviousCoordinatorAddress() {
+            return null;
+        }
+    }
+}
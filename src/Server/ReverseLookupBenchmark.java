@@ -0,0 +1,74 @@
+package src.Server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compares the cost of a reverse lookup done by scanning every record in loginData
+ * against one done through the UUID secondary index.
+ *
+ * Usage: $ java src.Server.ReverseLookupBenchmark [numUsers] [numLookups]
+ */
+public class ReverseLookupBenchmark {
+    private static final int DEFAULT_NUM_USERS = 1_000_000;
+    private static final int DEFAULT_NUM_LOOKUPS = 200;
+    private static final int WARMUP_ROUNDS = 3;
+
+    public static void main(String[] args) {
+        int numUsers = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_USERS;
+        int numLookups = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_NUM_LOOKUPS;
+
+        // populate the table and index the same way applyAction does
+        ConcurrentHashMap<String, LoginInfo> loginData = new ConcurrentHashMap<>();
+        ConcurrentHashMap<UUID, LoginInfo> uuidIndex = new ConcurrentHashMap<>();
+        List<String> uuidStrings = new ArrayList<>();
+        for (int i = 0; i < numUsers; i++) {
+            LoginInfo info = new LoginInfo("user" + i, "User " + i, "password", "127.0.0.1");
+            loginData.put(info.loginName, info);
+            uuidIndex.put(info.uuid, info);
+            uuidStrings.add(info.uuid.toString());
+        }
+
+        // pick lookup targets up front so both variants query the same UUIDs
+        Random random = new Random(455);
+        String[] targets = new String[numLookups];
+        for (int i = 0; i < numLookups; i++) {
+            targets[i] = uuidStrings.get(random.nextInt(numUsers));
+        }
+
+        System.out.println("Reverse lookup of " + numLookups + " UUIDs over " + numUsers + " users");
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            boolean measured = round == WARMUP_ROUNDS;
+
+            long start = System.nanoTime();
+            int found = 0;
+            for (String target : targets) {
+                Optional<LoginInfo> result = loginData.values().stream().filter(x -> x.uuid.toString().equals(target)).findFirst();
+                if (result.isPresent()) {
+                    found++;
+                }
+            }
+            long scanNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (String target : targets) {
+                if (uuidIndex.get(UUID.fromString(target)) != null) {
+                    found++;
+                }
+            }
+            long indexNanos = System.nanoTime() - start;
+
+            if (found != 2 * numLookups) {
+                throw new IllegalStateException("Benchmark lookups did not find every user");
+            }
+            if (measured) {
+                System.out.printf("full scan: %12.1f us/op%n", scanNanos / 1000.0 / numLookups);
+                System.out.printf("uuid index: %11.3f us/op%n", indexNanos / 1000.0 / numLookups);
+            }
+        }
+    }
+}
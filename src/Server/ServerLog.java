@@ -0,0 +1,228 @@
+package src.Server;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server log written by a background thread, so the threads serving requests never wait on
+ * the console. Messages are patterns whose "{}" placeholders are filled from up to three
+ * arguments on the writer thread, so a call below the current level returns after one
+ * volatile read without building any strings; callers whose arguments are primitives should
+ * check isEnabled first so they are not boxed either. Lines wait in a bounded queue; if the
+ * writer falls that far behind, new lines are dropped and counted rather than blocking callers.
+ */
+public class ServerLog {
+    /**
+     * Severity of a line, from most to least verbose. A log at some level writes lines at that level and above.
+     */
+    public enum Level {
+        TRACE, // every clock event
+        DEBUG, // what the server is doing
+        ERROR, // things that went wrong on the server
+        OFF
+    }
+
+    private static final long FLUSH_POLL_MILLIS = 1;
+    private static final long SHUTDOWN_FLUSH_MILLIS = 1000;
+
+    private final PrintStream out;
+    private final BlockingQueue<Entry> queue;
+    private volatile Level level = Level.ERROR;
+    // name written on every line, such as the server's address
+    private volatile String source = "";
+    // lines accepted into the queue, lines written by the writer, and lines dropped because the queue was full
+    private final AtomicLong accepted = new AtomicLong();
+    private volatile long written = 0;
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Creates a log and starts its writer thread.
+     *
+     * @param out      where lines are written
+     * @param capacity most lines that can wait to be written
+     */
+    public ServerLog(PrintStream out, int capacity) {
+        this.out = out;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        Thread writer = new Thread(this::runWriter, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        // lines logged just before an exit would otherwise be lost with the daemon writer
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(SHUTDOWN_FLUSH_MILLIS)));
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Changes which lines are written, taking effect for the next call on any thread.
+     *
+     * @param level least severe level to write
+     */
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    /**
+     * @param lineLevel level of a line about to be logged
+     * @return whether lines at that level are being written
+     */
+    public boolean isEnabled(Level lineLevel) {
+        return lineLevel.compareTo(level) >= 0;
+    }
+
+    /**
+     * @return number of lines dropped so far because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public void trace(String pattern, Object first, Object second) {
+        log(Level.TRACE, pattern, 2, first, second, null);
+    }
+
+    public void trace(String pattern, Object first, Object second, Object third) {
+        log(Level.TRACE, pattern, 3, first, second, third);
+    }
+
+    public void debug(String message) {
+        log(Level.DEBUG, message, 0, null, null, null);
+    }
+
+    public void debug(String pattern, Object first) {
+        log(Level.DEBUG, pattern, 1, first, null, null);
+    }
+
+    public void debug(String pattern, Object first, Object second) {
+        log(Level.DEBUG, pattern, 2, first, second, null);
+    }
+
+    public void debug(String pattern, Object first, Object second, Object third) {
+        log(Level.DEBUG, pattern, 3, first, second, third);
+    }
+
+    public void error(String message) {
+        log(Level.ERROR, message, 0, null, null, null);
+    }
+
+    public void error(String pattern, Object first) {
+        log(Level.ERROR, pattern, 1, first, null, null);
+    }
+
+    /**
+     * Waits until every line accepted so far has been written, or the timeout passes.
+     *
+     * @param timeoutMillis longest to wait
+     */
+    public void flush(long timeoutMillis) {
+        long target = accepted.get();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (written < target && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(FLUSH_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void log(Level lineLevel, String pattern, int argCount, Object first, Object second, Object third) {
+        if (!isEnabled(lineLevel)) {
+            return;
+        }
+        if (queue.offer(new Entry(System.currentTimeMillis(), lineLevel, pattern, argCount, first, second, third))) {
+            accepted.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Body of the writer thread: formats and prints queued lines, a batch at a time.
+     */
+    private void runWriter() {
+        List<Entry> batch = new ArrayList<>();
+        long reportedDrops = 0;
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            for (Entry entry : batch) {
+                out.println(format(entry));
+            }
+            long drops = dropped.get();
+            if (drops != reportedDrops) {
+                out.println(LocalTime.now().truncatedTo(ChronoUnit.MILLIS) + " ERROR " + source + ": "
+                        + (drops - reportedDrops) + " log lines dropped because the log queue was full");
+                reportedDrops = drops;
+            }
+            out.flush();
+            written += batch.size();
+            batch.clear();
+        }
+    }
+
+    private String format(Entry entry) {
+        LocalTime time = LocalTime.ofInstant(Instant.ofEpochMilli(entry.millis), ZoneId.systemDefault()).truncatedTo(ChronoUnit.MILLIS);
+        StringBuilder line = new StringBuilder();
+        if (entry.level == Level.TRACE) {
+            line.append(IdServer.GREY_TEXT);
+        }
+        line.append(time).append(entry.level == Level.ERROR ? " ERROR " : " debug ").append(source).append(": ");
+        Object[] args = {entry.first, entry.second, entry.third};
+        int used = 0;
+        int from = 0;
+        int placeholder;
+        while (used < entry.argCount && (placeholder = entry.pattern.indexOf("{}", from)) >= 0) {
+            line.append(entry.pattern, from, placeholder).append(args[used++]);
+            from = placeholder + 2;
+        }
+        line.append(entry.pattern, from, entry.pattern.length());
+        if (entry.level == Level.TRACE) {
+            line.append(IdServer.NORMAL_TEXT);
+        }
+        return line.toString();
+    }
+
+    /**
+     * one line waiting to be formatted and written
+     */
+    private static class Entry {
+        final long millis;
+        final Level level;
+        final String pattern;
+        // number of arguments given, so a message logged without any is printed as is even if it contains "{}"
+        final int argCount;
+        final Object first;
+        final Object second;
+        final Object third;
+
+        Entry(long millis, Level level, String pattern, int argCount, Object first, Object second, Object third) {
+            this.millis = millis;
+            this.level = level;
+            this.pattern = pattern;
+            this.argCount = argCount;
+            this.first = first;
+            this.second = second;
+            this.third = third;
+        }
+    }
+}
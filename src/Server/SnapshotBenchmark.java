@@ -0,0 +1,96 @@
+package src.Server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compares saving and loading a full snapshot of loginData with Java serialization
+ * against the SnapshotCodec binary format, reporting time and file size for each.
+ *
+ * Usage: $ java src.Server.SnapshotBenchmark [numUsers]
+ */
+public class SnapshotBenchmark {
+    private static final int DEFAULT_NUM_USERS = 1_000_000;
+    private static final int WARMUP_ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int numUsers = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_USERS;
+
+        ConcurrentHashMap<String, LoginInfo> loginData = new ConcurrentHashMap<>();
+        for (int i = 0; i < numUsers; i++) {
+            LoginInfo info = new LoginInfo("user" + i, "User " + i, "password" + i, "127.0.0.1");
+            loginData.put(info.loginName, info);
+        }
+
+        Path serPath = Files.createTempFile("snapshot-bench", ".ser");
+        Path binPath = Files.createTempFile("snapshot-bench", ".bin");
+        try {
+            System.out.println("Full snapshot of " + numUsers + " users");
+            for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+                boolean measured = round == WARMUP_ROUNDS;
+
+                long start = System.nanoTime();
+                saveSerialized(serPath, loginData);
+                long serSaveNanos = System.nanoTime() - start;
+                start = System.nanoTime();
+                int serLoaded = loadSerialized(serPath).size();
+                long serLoadNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                saveBinary(binPath, loginData);
+                long binSaveNanos = System.nanoTime() - start;
+                start = System.nanoTime();
+                int binLoaded = loadBinary(binPath).size();
+                long binLoadNanos = System.nanoTime() - start;
+
+                if (serLoaded != numUsers || binLoaded != numUsers) {
+                    throw new IllegalStateException("Benchmark snapshots did not load every user");
+                }
+                if (measured) {
+                    System.out.printf("java serialization: save %8.1f ms, load %8.1f ms, %,12d bytes%n",
+                            serSaveNanos / 1e6, serLoadNanos / 1e6, Files.size(serPath));
+                    System.out.printf("binary codec:       save %8.1f ms, load %8.1f ms, %,12d bytes%n",
+                            binSaveNanos / 1e6, binLoadNanos / 1e6, Files.size(binPath));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(serPath);
+            Files.deleteIfExists(binPath);
+        }
+    }
+
+    private static void saveSerialized(Path path, Map<String, LoginInfo> data) throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeObject(data);
+            out.writeLong(0);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, LoginInfo> loadSerialized(Path path) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            return (Map<String, LoginInfo>) in.readObject();
+        }
+    }
+
+    private static void saveBinary(Path path, Map<String, LoginInfo> data) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            SnapshotCodec.write(channel, SnapshotCodec.KIND_BASE, 0, data);
+        }
+    }
+
+    private static Map<String, LoginInfo> loadBinary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return SnapshotCodec.read(channel).records;
+        }
+    }
+}
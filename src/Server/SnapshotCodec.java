@@ -0,0 +1,316 @@
+package src.Server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Binary file format for snapshots of loginData. A file is laid out as
+ * <pre>
+ *   header:  magic (int), version (short), kind (byte), lastMergedDelta (long), recordCount (int)
+ *   records: present (byte), loginName, and if present: uuid, realName, password,
+ *            creatorIpAddr, createdDate, lastChangeDate, changeStamp (int in version 2, long from version 3)
+ *   trailer: crc32 of every byte before it (int)
+ * </pre>
+ * Strings are a length (int, -1 for null) followed by UTF-8 bytes, UUIDs are two longs,
+ * and dates are epoch millis (Long.MIN_VALUE for null). Only delta files hold records
+ * that are not present, which mark a deleted loginName.
+ */
+public class SnapshotCodec {
+    public static final int MAGIC = 0x49445331; // "IDS1"
+    public static final short VERSION = 3;
+    // oldest version read can still read, whose records have no changeStamp
+    private static final short OLDEST_READABLE_VERSION = 1;
+    public static final byte KIND_BASE = 0;
+    public static final byte KIND_DELTA = 1;
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final long NULL_DATE = Long.MIN_VALUE;
+
+    /**
+     * Contents of a snapshot file
+     */
+    public static class Contents {
+        public final byte kind;
+        public final long lastMergedDelta;
+        // current record for each loginName, or null if it was deleted
+        public final Map<String, LoginInfo> records;
+
+        Contents(byte kind, long lastMergedDelta, Map<String, LoginInfo> records) {
+            this.kind = kind;
+            this.lastMergedDelta = lastMergedDelta;
+            this.records = records;
+        }
+    }
+
+    /**
+     * Writes a snapshot file to channel, starting at its current position. Also used to
+     * encode pages of records sent between replicas.
+     *
+     * @param channel         open channel to write to
+     * @param kind            KIND_BASE or KIND_DELTA
+     * @param lastMergedDelta last delta folded into a base, or 0 for a delta
+     * @param records         current record for each loginName, or null if it was deleted
+     * @return number of bytes written
+     * @throws IOException the channel could not be written
+     */
+    public static long write(WritableByteChannel channel, byte kind, long lastMergedDelta, Map<String, LoginInfo> records) throws IOException {
+        // copy the entries first so the count in the header matches even if records is changing underneath us
+        List<Map.Entry<String, LoginInfo>> entries = new ArrayList<>(records.entrySet());
+
+        ChannelWriter out = new ChannelWriter(channel);
+        out.putInt(MAGIC);
+        out.putShort(VERSION);
+        out.putByte(kind);
+        out.putLong(lastMergedDelta);
+        out.putInt(entries.size());
+        for (Map.Entry<String, LoginInfo> entry : entries) {
+            LoginInfo info = entry.getValue();
+            if (info == null) {
+                out.putByte((byte) 0);
+                out.putString(entry.getKey());
+                continue;
+            }
+            out.putByte((byte) 1);
+            out.putString(info.loginName);
+            out.putLong(info.uuid.getMostSignificantBits());
+            out.putLong(info.uuid.getLeastSignificantBits());
+            out.putString(info.realName);
+            out.putString(info.password);
+            out.putString(info.creatorIpAddr);
+            out.putDate(info.createdDate);
+            out.putDate(info.lastChangeDate);
+            out.putLong(info.changeStamp);
+        }
+        return out.finish();
+    }
+
+    /**
+     * Reads a snapshot file from channel, starting at its current position, and checks its checksum.
+     *
+     * @param channel open channel to read from
+     * @return contents of the file
+     * @throws IOException the file could not be read, or is not a valid snapshot
+     */
+    public static Contents read(ReadableByteChannel channel) throws IOException {
+        ChannelReader in = new ChannelReader(channel);
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not a snapshot file");
+        }
+        short version = in.getShort();
+        if (version < OLDEST_READABLE_VERSION || version > VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        byte kind = in.getByte();
+        long lastMergedDelta = in.getLong();
+        int recordCount = in.getInt();
+        if (recordCount < 0) {
+            throw new IOException("Corrupt snapshot record count " + recordCount);
+        }
+
+        Map<String, LoginInfo> records = new HashMap<>(Math.max(16, (int) (recordCount / 0.75f) + 1));
+        for (int i = 0; i < recordCount; i++) {
+            boolean present = in.getByte() != 0;
+            String loginName = in.getString();
+            if (!present) {
+                records.put(loginName, null);
+                continue;
+            }
+            UUID uuid = new UUID(in.getLong(), in.getLong());
+            String realName = in.getString();
+            String password = in.getString();
+            String creatorIpAddr = in.getString();
+            Date createdDate = in.getDate();
+            Date lastChangeDate = in.getDate();
+            long changeStamp = (version >= 3) ? in.getLong() : (version == 2) ? in.getInt() : 0;
+            records.put(loginName, new LoginInfo(loginName, uuid, realName, password, creatorIpAddr, createdDate, lastChangeDate, changeStamp));
+        }
+
+        int expectedChecksum = in.checksumSoFar();
+        if (in.getInt() != expectedChecksum) {
+            throw new IOException("Snapshot checksum does not match");
+        }
+        return new Contents(kind, lastMergedDelta, records);
+    }
+
+    /**
+     * Buffers primitive writes to a channel, keeping a running checksum of everything written
+     */
+    private static class ChannelWriter {
+        private final WritableByteChannel channel;
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        private long bytesWritten = 0;
+
+        ChannelWriter(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void putByte(byte value) throws IOException {
+            ensureRoom(Byte.BYTES);
+            buffer.put(value);
+        }
+
+        void putShort(short value) throws IOException {
+            ensureRoom(Short.BYTES);
+            buffer.putShort(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensureRoom(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensureRoom(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void putString(String value) throws IOException {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            ensureRoom(bytes.length);
+            buffer.put(bytes);
+        }
+
+        void putDate(Date value) throws IOException {
+            putLong(value == null ? NULL_DATE : value.getTime());
+        }
+
+        /**
+         * Writes the checksum trailer and everything still buffered.
+         *
+         * @return total bytes written
+         */
+        long finish() throws IOException {
+            drain();
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                bytesWritten += channel.write(buffer);
+            }
+            return bytesWritten;
+        }
+
+        private void ensureRoom(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain();
+                if (buffer.capacity() < bytes) {
+                    buffer = ByteBuffer.allocate(bytes);
+                }
+            }
+        }
+
+        private void drain() throws IOException {
+            crc.update(buffer.array(), 0, buffer.position());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                bytesWritten += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Buffers primitive reads from a channel, keeping a running checksum of everything consumed
+     */
+    private static class ChannelReader {
+        private final ReadableByteChannel channel;
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+
+        ChannelReader(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        byte getByte() throws IOException {
+            ensureAvailable(Byte.BYTES);
+            return buffer.get();
+        }
+
+        short getShort() throws IOException {
+            ensureAvailable(Short.BYTES);
+            return buffer.getShort();
+        }
+
+        int getInt() throws IOException {
+            ensureAvailable(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            ensureAvailable(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        String getString() throws IOException {
+            int length = getInt();
+            if (length == -1) {
+                return null;
+            } else if (length < 0) {
+                throw new IOException("Corrupt snapshot string length " + length);
+            }
+            ensureAvailable(length);
+            String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+
+        Date getDate() throws IOException {
+            long millis = getLong();
+            return millis == NULL_DATE ? null : new Date(millis);
+        }
+
+        /**
+         * @return checksum of every byte consumed so far
+         */
+        int checksumSoFar() {
+            absorbConsumed();
+            return (int) crc.getValue();
+        }
+
+        /**
+         * Adds the bytes consumed from the buffer to the checksum and drops them from the buffer.
+         */
+        private void absorbConsumed() {
+            crc.update(buffer.array(), 0, buffer.position());
+            buffer.compact();
+            buffer.flip();
+        }
+
+        private void ensureAvailable(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            absorbConsumed();
+            if (buffer.capacity() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(bytes);
+                larger.put(buffer);
+                larger.flip();
+                buffer = larger;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Snapshot ends partway through a record");
+                }
+            }
+            buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package src.Server;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamConstants;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Saved copy of loginData on disk, made of a full base file plus delta files holding only
+ * the records changed since. Deltas are numbered in the order they were written; the base
+ * remembers the last delta folded into it, so a crash partway through merging never lets
+ * an old delta be applied over newer data. Every file is written to a temporary path,
+ * synced, and then renamed over its destination so no reader ever sees a torn file.
+ * Files are written in the SnapshotCodec format; files saved by older versions with
+ * Java serialization are still read, and replaced by the next full save.
+ */
+public class SnapshotStore {
+    // number of deltas allowed to build up before they are merged into a new base
+    public static final int MAX_DELTA_FILES = 10;
+
+    private static final String DELTA_INFIX = ".delta.";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path basePath;
+    private long lastDeltaNumber = 0;
+    private int deltaCount = 0;
+    // whether anything loaded was in the old Java serialization format
+    private boolean legacyFormatLoaded = false;
+
+    public SnapshotStore(String basePath) {
+        this.basePath = Paths.get(basePath);
+    }
+
+    /**
+     * Reads the base file and applies every delta written after it.
+     *
+     * @return the saved data, or null if nothing has been saved yet
+     * @throws IOException            a saved file could not be read
+     * @throws ClassNotFoundException a saved file holds an unrecognized class
+     */
+    public ConcurrentHashMap<String, LoginInfo> load() throws IOException, ClassNotFoundException {
+        if (!Files.exists(basePath)) {
+            return null;
+        }
+
+        legacyFormatLoaded = false;
+        SnapshotCodec.Contents base = readFile(basePath, SnapshotCodec.KIND_BASE);
+        ConcurrentHashMap<String, LoginInfo> data = new ConcurrentHashMap<>(base.records);
+        long lastMergedDelta = base.lastMergedDelta;
+
+        lastDeltaNumber = lastMergedDelta;
+        deltaCount = 0;
+        for (long deltaNumber : listDeltaNumbers()) {
+            Path deltaPath = deltaPath(deltaNumber);
+            if (deltaNumber <= lastMergedDelta) {
+                // left over from a merge that finished writing the base but not cleaning up
+                Files.deleteIfExists(deltaPath);
+                continue;
+            }
+            applyDelta(data, readFile(deltaPath, SnapshotCodec.KIND_DELTA).records);
+            lastDeltaNumber = deltaNumber;
+            deltaCount++;
+        }
+        return data;
+    }
+
+    /**
+     * Returns whether the next save should be a full one: there is no base yet, enough
+     * deltas have built up that they should be merged, or the saved files are in the old format.
+     *
+     * @return true if writeFull should be used instead of writeDelta
+     */
+    public boolean needsFullSave() {
+        return !Files.exists(basePath) || deltaCount >= MAX_DELTA_FILES || legacyFormatLoaded;
+    }
+
+    /**
+     * Writes all data as a new base file, replacing the old base and every delta.
+     *
+     * @param data every record to save
+     * @return number of bytes written
+     * @throws IOException the base could not be written
+     */
+    public long writeFull(Map<String, LoginInfo> data) throws IOException {
+        long mergedDelta = lastDeltaNumber;
+        long bytes = writeAtomically(basePath, channel -> SnapshotCodec.write(channel, SnapshotCodec.KIND_BASE, mergedDelta, data));
+
+        for (long deltaNumber : listDeltaNumbers()) {
+            if (deltaNumber <= mergedDelta) {
+                Files.deleteIfExists(deltaPath(deltaNumber));
+            }
+        }
+        deltaCount = 0;
+        legacyFormatLoaded = false;
+        return bytes;
+    }
+
+    /**
+     * Writes the records changed since the last save as a new delta file.
+     *
+     * @param changes current record for each changed loginName, or null if it was deleted
+     * @return number of bytes written
+     * @throws IOException the delta could not be written
+     */
+    public long writeDelta(Map<String, LoginInfo> changes) throws IOException {
+        long deltaNumber = lastDeltaNumber + 1;
+        long bytes = writeAtomically(deltaPath(deltaNumber), channel -> SnapshotCodec.write(channel, SnapshotCodec.KIND_DELTA, 0, changes));
+        lastDeltaNumber = deltaNumber;
+        deltaCount++;
+        return bytes;
+    }
+
+    /**
+     * Applies a delta's changes on top of data.
+     *
+     * @param data    records to update
+     * @param changes current record for each changed loginName, or null if it was deleted
+     */
+    private static void applyDelta(Map<String, LoginInfo> data, Map<String, LoginInfo> changes) {
+        for (Map.Entry<String, LoginInfo> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                data.remove(change.getKey());
+            } else {
+                data.put(change.getKey(), change.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reads a base or delta file in whichever format it was saved in.
+     *
+     * @param path file to read
+     * @param kind SnapshotCodec.KIND_BASE or KIND_DELTA, whichever the file should be
+     * @return contents of the file
+     * @throws IOException            the file could not be read, or is the wrong kind
+     * @throws ClassNotFoundException an old-format file holds an unrecognized class
+     */
+    private SnapshotCodec.Contents readFile(Path path, byte kind) throws IOException, ClassNotFoundException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer start = ByteBuffer.allocate(Short.BYTES);
+            channel.read(start);
+            if (start.position() == Short.BYTES && start.getShort(0) == ObjectStreamConstants.STREAM_MAGIC) {
+                legacyFormatLoaded = true;
+                return readLegacyFile(path, kind);
+            }
+            channel.position(0);
+            SnapshotCodec.Contents contents = SnapshotCodec.read(channel);
+            if (contents.kind != kind) {
+                throw new IOException("Snapshot file " + path + " is not a " + (kind == SnapshotCodec.KIND_BASE ? "base" : "delta"));
+            }
+            return contents;
+        }
+    }
+
+    /**
+     * Reads a file saved with Java serialization: a base holds the map and then the last
+     * merged delta number, and a delta holds only the map of changes.
+     *
+     * @param path file to read
+     * @param kind SnapshotCodec.KIND_BASE or KIND_DELTA, whichever the file should be
+     * @return contents of the file
+     * @throws IOException            the file could not be read
+     * @throws ClassNotFoundException the file holds an unrecognized class
+     */
+    @SuppressWarnings("unchecked")
+    private static SnapshotCodec.Contents readLegacyFile(Path path, byte kind) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            Map<String, LoginInfo> records = (Map<String, LoginInfo>) in.readObject();
+            long lastMergedDelta = 0;
+            try {
+                lastMergedDelta = in.readLong();
+            } catch (EOFException ignored) {
+                // a delta, or a base saved before deltas existed
+            }
+            return new SnapshotCodec.Contents(kind, lastMergedDelta, records);
+        }
+    }
+
+    /**
+     * Writes a file by way of a synced temporary file renamed over the destination, then syncs
+     * the directory so the rename itself survives a crash. Callers drop write-ahead log records
+     * once this returns, so the new file must be reachable by name after a crash, not just on disk.
+     *
+     * @param destination path to end up at
+     * @param contents    writes the file contents
+     * @return number of bytes written
+     * @throws IOException the file could not be written
+     */
+    private static long writeAtomically(Path destination, ChannelWriter contents) throws IOException {
+        Path tempPath = Paths.get(destination + TEMP_SUFFIX);
+        long bytes;
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            bytes = contents.write(channel);
+            channel.force(true);
+        }
+        Files.move(tempPath, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Path directory = destination.toAbsolutePath().getParent();
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        }
+        return bytes;
+    }
+
+    private Path deltaPath(long deltaNumber) {
+        return Paths.get(basePath + DELTA_INFIX + deltaNumber);
+    }
+
+    /**
+     * Finds the numbers of every delta file next to the base, in ascending order.
+     *
+     * @return delta numbers
+     * @throws IOException directory could not be listed
+     */
+    private List<Long> listDeltaNumbers() throws IOException {
+        Path directory = basePath.toAbsolutePath().getParent();
+        String prefix = basePath.getFileName() + DELTA_INFIX;
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (String name : files.map(file -> file.getFileName().toString()).collect(Collectors.toList())) {
+                if (name.startsWith(prefix) && !name.endsWith(TEMP_SUFFIX)) {
+                    try {
+                        numbers.add(Long.parseLong(name.substring(prefix.length())));
+                    } catch (NumberFormatException ignored) {
+                        // not one of our deltas
+                    }
+                }
+            }
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    /**
+     * writes the contents of a saved file, returning the number of bytes written
+     */
+    private interface ChannelWriter {
+        long write(FileChannel channel) throws IOException;
+    }
+}
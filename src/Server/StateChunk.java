@@ -0,0 +1,56 @@
+package src.Server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * One page of a full-database transfer between replicas: every record whose loginName falls
+ * after the previous page's last name, up to and including lastLoginName, encoded with
+ * SnapshotCodec and compressed.
+ */
+public class StateChunk implements Serializable {
+    // sender's latest action timestamp from just before this page was read
+    public final long snapshotTimestamp;
+    // last loginName covered by this page, to be passed back to fetch the next one
+    public final String lastLoginName;
+    // whether more pages follow
+    public final boolean hasMore;
+    public final int recordCount;
+    private final byte[] compressedRecords;
+
+    public StateChunk(long snapshotTimestamp, Map<String, LoginInfo> records, String lastLoginName, boolean hasMore) throws IOException {
+        this.snapshotTimestamp = snapshotTimestamp;
+        this.lastLoginName = lastLoginName;
+        this.hasMore = hasMore;
+        this.recordCount = records.size();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes)) {
+            SnapshotCodec.write(Channels.newChannel(out), SnapshotCodec.KIND_BASE, 0, records);
+        }
+        this.compressedRecords = bytes.toByteArray();
+    }
+
+    /**
+     * @return the records on this page, keyed by loginName
+     * @throws IOException the page was damaged in transit
+     */
+    public Map<String, LoginInfo> getRecords() throws IOException {
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(compressedRecords))) {
+            return SnapshotCodec.read(Channels.newChannel(in)).records;
+        }
+    }
+
+    /**
+     * @return size of this page on the wire, before serialization overhead
+     */
+    public int compressedSize() {
+        return compressedRecords.length;
+    }
+}
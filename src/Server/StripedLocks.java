@@ -0,0 +1,95 @@
+package src.Server;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of locks that loginNames are spread over by hash, so writes to different
+ * loginNames can run in parallel while writes to the same one take turns. Writes that
+ * touch several loginNames, such as renames and batches, lock every stripe they need in
+ * ascending stripe order, so two of them can never each hold a lock the other wants.
+ */
+public class StripedLocks {
+    private final ReentrantLock[] stripes;
+
+    /**
+     * @param stripeCount number of locks, a power of two
+     */
+    public StripedLocks(int stripeCount) {
+        if (Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("Stripe count must be a power of two, got " + stripeCount);
+        }
+        stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Locks the stripe of one loginName.
+     *
+     * @param key loginName to lock
+     * @return the held lock, to be unlocked when done
+     */
+    public Held lock(String key) {
+        return lockStripes(new int[]{stripeOf(key)});
+    }
+
+    /**
+     * Locks the stripes of two loginNames, in stripe order.
+     *
+     * @param first  one loginName to lock
+     * @param second the other loginName to lock
+     * @return the held locks, to be unlocked when done
+     */
+    public Held lock(String first, String second) {
+        return lockStripes(new int[]{stripeOf(first), stripeOf(second)});
+    }
+
+    /**
+     * Locks the stripes of every given loginName, in stripe order.
+     *
+     * @param keys loginNames to lock
+     * @return the held locks, to be unlocked when done
+     */
+    public Held lock(Collection<String> keys) {
+        int[] needed = new int[keys.size()];
+        int i = 0;
+        for (String key : keys) {
+            needed[i++] = stripeOf(key);
+        }
+        return lockStripes(needed);
+    }
+
+    private Held lockStripes(int[] needed) {
+        int[] ordered = Arrays.stream(needed).sorted().distinct().toArray();
+        for (int stripe : ordered) {
+            stripes[stripe].lock();
+        }
+        return new Held(ordered);
+    }
+
+    private int stripeOf(String key) {
+        int hash = key.hashCode();
+        // spread the high bits down, as HashMap does, since only the low bits pick the stripe
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    /**
+     * Locks held by one write, released in reverse order by unlock
+     */
+    public class Held {
+        private final int[] heldStripes;
+
+        private Held(int[] heldStripes) {
+            this.heldStripes = heldStripes;
+        }
+
+        public void unlock() {
+            for (int i = heldStripes.length - 1; i >= 0; i--) {
+                stripes[heldStripes[i]].unlock();
+            }
+        }
+    }
+}
@@ -1,24 +1,35 @@
 package src.Server;
 
 import java.io.Serializable;
-import java.util.Map;
 import java.util.SortedMap;
 
 public class SyncInfo implements Serializable {
-    public SortedMap<Integer, ActionObject> recentActions;
-    Map<String, LoginInfo> allData;
+    public SortedMap<Long, ActionObject> recentActions;
+    // whether the sender's action log holds more actions after these, to be fetched as the next page
+    public final boolean hasMore;
+    // whether the action log no longer reaches back far enough, so the whole database must be transferred
+    private final boolean entireDatabase;
 
-    public SyncInfo(SortedMap<Integer, ActionObject> recentActions) {
+    public SyncInfo(SortedMap<Long, ActionObject> recentActions, boolean hasMore) {
         this.recentActions = recentActions;
-        this.allData = null;
+        this.hasMore = hasMore;
+        this.entireDatabase = false;
     }
 
-    public SyncInfo(Map<String, LoginInfo> allData) {
-        this.allData = allData;
+    private SyncInfo() {
         this.recentActions = null;
+        this.hasMore = false;
+        this.entireDatabase = true;
+    }
+
+    /**
+     * @return a SyncInfo telling the replica to fetch the whole database with getStateChunk
+     */
+    public static SyncInfo entireDatabase() {
+        return new SyncInfo();
     }
 
     public boolean isEntireDatabase() {
-        return allData != null;
+        return entireDatabase;
     }
 }
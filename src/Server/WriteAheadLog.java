@@ -0,0 +1,359 @@
+package src.Server;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of applied actions, so writes made since the last snapshot survive a crash.
+ * Each record is stored as [length][crc32][serialized ActionObject]. A single writer thread
+ * drains every record appended since its last pass with one write and one fsync (group commit).
+ */
+public class WriteAheadLog {
+    /**
+     * When appended records are forced to disk, and whether append waits for it.
+     */
+    public enum FsyncPolicy {
+        ALWAYS, // fsync as soon as records are waiting; append returns once its record is durable
+        BATCHED, // linger briefly to gather more records per fsync; append returns once its record is durable
+        PERIODIC // fsync on a fixed period; append returns immediately
+    }
+
+    private static final int BATCH_LINGER_MILLIS = 5;
+    private static final int MAX_BATCH_RECORDS = 1024;
+    private static final int PERIODIC_SYNC_MILLIS = 1000;
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final Path path;
+    private final FsyncPolicy policy;
+    private FileChannel channel;
+    private Thread writerThread;
+
+    // guards the counters and pending records below
+    private final Object lock = new Object();
+    // guards channel while writing to it or replacing it
+    private final Object channelLock = new Object();
+    private List<byte[]> pending = new ArrayList<>();
+    private long appendedRecords = 0;
+    private long durableRecords = 0;
+    // log size in bytes once everything appended so far, or everything made durable so far, is written
+    private long appendedBytes = 0;
+    private long durableBytes = 0;
+    private IOException writeFailure = null;
+    private boolean closed = false;
+
+    public WriteAheadLog(String path, FsyncPolicy policy) throws IOException {
+        this.path = Paths.get(path);
+        this.policy = policy;
+        this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        this.channel.position(channel.size());
+        this.appendedBytes = channel.size();
+        this.durableBytes = appendedBytes;
+    }
+
+    /**
+     * Reads every intact record in the log, in order, and passes it to consumer. A torn or corrupt
+     * record at the end (from a crash mid-write) is cut off so new records follow the last good one.
+     * Must be called before start.
+     *
+     * @param consumer receives each logged action
+     * @return number of records replayed
+     * @throws IOException log could not be read
+     */
+    public int replay(Consumer<ActionObject> consumer) throws IOException {
+        int replayed = 0;
+        long validBytes = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+        try {
+            while (true) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < 0) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (checksumOf(payload) != checksum) {
+                    break;
+                }
+                consumer.accept(deserialize(payload));
+                validBytes += RECORD_HEADER_BYTES + length;
+                replayed++;
+            }
+        } catch (EOFException ignored) {
+            // reached the end of the log, possibly partway through a torn record
+        }
+
+        if (channel.size() > validBytes) {
+            channel.truncate(validBytes);
+        }
+        channel.position(validBytes);
+        appendedBytes = validBytes;
+        durableBytes = validBytes;
+        return replayed;
+    }
+
+    /**
+     * Starts the background writer thread. Records may be appended after this is called.
+     */
+    public void start() {
+        writerThread = new Thread(this::runWriter, "wal-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Appends an action to the log. Unless the policy is PERIODIC, waits until it is durable.
+     *
+     * @param action action that was applied
+     * @throws IOException the action could not be made durable
+     */
+    public void append(ActionObject action) throws IOException {
+        awaitDurable(enqueue(action));
+    }
+
+    /**
+     * Hands an action to the writer thread without waiting for it to be written, so a caller
+     * that must not block can log in order and leave waiting for durability to someone else.
+     *
+     * @param action action that was applied
+     * @return sequence number of its record, to pass to awaitDurable
+     * @throws IOException the action could not be serialized, or the log is closed or has failed
+     */
+    public long enqueue(ActionObject action) throws IOException {
+        byte[] payload = serialize(action);
+        byte[] record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length)
+                .putInt(payload.length)
+                .putInt(checksumOf(payload))
+                .put(payload)
+                .array();
+
+        synchronized (lock) {
+            if (closed) {
+                throw new IOException("Write-ahead log is closed");
+            }
+            if (writeFailure != null) {
+                // the writer thread has stopped, so nothing queued now would ever be written
+                throw writeFailure;
+            }
+            pending.add(record);
+            appendedBytes += record.length;
+            lock.notifyAll();
+            return ++appendedRecords;
+        }
+    }
+
+    /**
+     * Waits until the record with the given sequence number, and every one before it, is durable.
+     * Returns at once if the policy is PERIODIC, unless an earlier write has already failed.
+     *
+     * @param sequence value returned by enqueue, or 0 for none
+     * @throws IOException the record could not be made durable
+     */
+    public void awaitDurable(long sequence) throws IOException {
+        synchronized (lock) {
+            if (policy == FsyncPolicy.PERIODIC) {
+                if (writeFailure != null && durableRecords < sequence) {
+                    throw writeFailure;
+                }
+                return;
+            }
+            while (durableRecords < sequence && writeFailure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for write-ahead log", e);
+                }
+            }
+            if (durableRecords < sequence) {
+                throw writeFailure;
+            }
+        }
+    }
+
+    /**
+     * Returns a position covering every record appended so far, to be passed to truncateBefore
+     * once a snapshot taken after this call is safely written.
+     *
+     * @return log position after the last appended record
+     */
+    public long mark() {
+        synchronized (lock) {
+            return appendedBytes;
+        }
+    }
+
+    /**
+     * Drops every record before a mark, keeping those appended since. Records after the mark
+     * may also be in the snapshot; replaying them again is harmless because each one either
+     * fails its checks or recreates the same result.
+     *
+     * @param mark value returned by mark before the snapshot began
+     * @throws IOException log could not be rewritten
+     */
+    public void truncateBefore(long mark) throws IOException {
+        synchronized (lock) {
+            // everything up to the mark must be on disk before it can be dropped
+            while (durableBytes < mark && writeFailure == null && !closed) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (writeFailure != null) {
+                throw writeFailure;
+            }
+        }
+
+        synchronized (channelLock) {
+            // copy the tail into a new file and atomically swap it in
+            Path tempPath = Paths.get(path + ".tmp");
+            try (FileChannel temp = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long end = channel.size();
+                long copied = 0;
+                while (mark + copied < end) {
+                    copied += channel.transferTo(mark + copied, end - mark - copied, temp);
+                }
+                temp.force(true);
+            }
+            channel.close();
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.READ);
+            channel.position(channel.size());
+
+            synchronized (lock) {
+                appendedBytes -= mark;
+                durableBytes -= mark;
+            }
+        }
+    }
+
+    /**
+     * Makes every appended record durable, stops the writer thread, and closes the log.
+     */
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        if (writerThread != null) {
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Body of the writer thread: repeatedly gathers pending records according to the fsync
+     * policy, writes them with a single fsync, and wakes the appenders waiting on them.
+     */
+    private void runWriter() {
+        long lingerMillis = (policy == FsyncPolicy.ALWAYS) ? 0 : (policy == FsyncPolicy.BATCHED) ? BATCH_LINGER_MILLIS : PERIODIC_SYNC_MILLIS;
+        while (true) {
+            List<byte[]> batch;
+            long batchEndSequence;
+            try {
+                synchronized (lock) {
+                    while (pending.isEmpty() && !closed) {
+                        lock.wait();
+                    }
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                    // gather more records until the linger ends, the batch is full, or we are closing
+                    long deadline = System.currentTimeMillis() + lingerMillis;
+                    long remaining = lingerMillis;
+                    while (remaining > 0 && pending.size() < MAX_BATCH_RECORDS && !closed) {
+                        lock.wait(remaining);
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                    batch = pending;
+                    pending = new ArrayList<>();
+                    batchEndSequence = appendedRecords;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            long batchBytes = 0;
+            IOException failure = null;
+            try {
+                synchronized (channelLock) {
+                    ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+                    for (int i = 0; i < batch.size(); i++) {
+                        buffers[i] = ByteBuffer.wrap(batch.get(i));
+                        batchBytes += batch.get(i).length;
+                    }
+                    long written = 0;
+                    while (written < batchBytes) {
+                        written += channel.write(buffers);
+                    }
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            synchronized (lock) {
+                if (failure != null) {
+                    writeFailure = failure;
+                } else {
+                    durableRecords = batchEndSequence;
+                    durableBytes += batchBytes;
+                }
+                lock.notifyAll();
+            }
+            if (failure != null) {
+                return;
+            }
+        }
+    }
+
+    private static byte[] serialize(ActionObject action) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(action);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ActionObject deserialize(byte[] payload) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            return (ActionObject) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unrecognized record in write-ahead log", e);
+        }
+    }
+
+    private static int checksumOf(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
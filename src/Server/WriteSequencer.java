@@ -0,0 +1,139 @@
+package src.Server;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Runs writes one at a time on a single thread, in the order they were submitted. Callers
+ * hand their write to a bounded ring without taking a lock: each claims the next slot by
+ * advancing tail, then publishes its write into the slot, and the writer thread takes slots
+ * in order from head. A caller that finds the ring full waits for the writer to free a slot.
+ */
+public class WriteSequencer {
+    private static final long FULL_RING_WAIT_NANOS = 50_000;
+
+    private final AtomicReferenceArray<Write<?>> slots;
+    private final int mask;
+    // next slot a caller will claim, and next slot the writer will take
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;
+    // set by the writer before it parks, so callers know to wake it
+    private volatile boolean writerParked = false;
+    private final Thread writer;
+
+    /**
+     * Creates a sequencer and starts its writer thread.
+     *
+     * @param capacity most writes that can wait at once, a power of two
+     * @param name     name of the writer thread
+     */
+    public WriteSequencer(int capacity, String name) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two, got " + capacity);
+        }
+        slots = new AtomicReferenceArray<>(capacity);
+        mask = capacity - 1;
+        writer = new Thread(this::runWrites, name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a write to run after every write submitted before it.
+     *
+     * @param work the write
+     * @return future completed with the write's result, or with whatever it threw
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> work) {
+        Write<T> write = new Write<>(work);
+        long slot;
+        while (true) {
+            slot = tail.get();
+            if (slot - head >= slots.length()) {
+                LockSupport.parkNanos(FULL_RING_WAIT_NANOS);
+            } else if (tail.compareAndSet(slot, slot + 1)) {
+                break;
+            }
+        }
+        slots.set((int) (slot & mask), write);
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+        return write.future;
+    }
+
+    /**
+     * Queues a write and waits for it to run. Runs it directly if called from the writer thread.
+     *
+     * @param work the write
+     * @return the write's result
+     */
+    public <T> T apply(Supplier<T> work) {
+        if (Thread.currentThread() == writer) {
+            return work.get();
+        }
+        try {
+            return submit(work).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of writes submitted but not yet started
+     */
+    public long getQueueDepth() {
+        return Math.max(0, tail.get() - head);
+    }
+
+    /**
+     * Body of the writer thread: takes each write in slot order and runs it, parking while the ring is empty.
+     */
+    private void runWrites() {
+        while (true) {
+            int index = (int) (head & mask);
+            Write<?> write = slots.get(index);
+            if (write == null) {
+                // either nothing is queued, or a caller has claimed this slot but not filled it yet
+                writerParked = true;
+                if (slots.get(index) == null) {
+                    LockSupport.park(this);
+                }
+                writerParked = false;
+                continue;
+            }
+            slots.set(index, null);
+            head = head + 1;
+            write.run();
+        }
+    }
+
+    /**
+     * one queued write and the future its caller is waiting on
+     */
+    private static class Write<T> {
+        final Supplier<T> work;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Write(Supplier<T> work) {
+            this.work = work;
+        }
+
+        void run() {
+            try {
+                future.complete(work.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}